@@ -0,0 +1,43 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.ThreadsUtils;
+import online.zust.qcqcqc.utils.threads.PromiseExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基准测试公共设置
+ *
+ * @author qcqcqc
+ */
+final class BenchmarkSupport {
+    private static Executor executor;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 创建和默认配置一致的Promise线程池（16核心线程、32最大线程、127队列、CallerRunsPolicy）
+     * 必须在Promise类加载之前调用，同一个JVM中只创建一次
+     *
+     * @return 线程池
+     */
+    static synchronized Executor promiseExecutor() {
+        if (executor == null) {
+            executor = ThreadsUtils.createExecutor(16, 32, 127, new ThreadPoolExecutor.CallerRunsPolicy(), "bench");
+            PromiseExecutor.initExecutor(executor);
+        }
+        return executor;
+    }
+
+    /**
+     * 模拟一次阻塞调用，比如一次RPC
+     *
+     * @param nanos 阻塞时间
+     */
+    static void block(long nanos) {
+        LockSupport.parkNanos(nanos);
+    }
+}
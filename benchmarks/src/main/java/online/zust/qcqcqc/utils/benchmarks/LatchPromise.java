@@ -0,0 +1,85 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.tasks.PromisedTask;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * 基于CountDownLatch的旧版Promise完成机制，仅作为基准测试的对照组
+ *
+ * @author qcqcqc
+ */
+public class LatchPromise<T> {
+    private final CountDownLatch countDownLatch = new CountDownLatch(1);
+    private final PromisedTask<T> promisedTask;
+    private final Promise.NextStatus nextStatus = new Promise.NextStatus();
+    private final Executor executor;
+    private Consumer<T> success;
+    private T result;
+    private PromiseStatus status = PromiseStatus.PENDING;
+    private boolean started;
+
+    public LatchPromise(PromisedTask<T> promisedTask, Executor executor) {
+        this.promisedTask = promisedTask;
+        this.executor = executor;
+    }
+
+    public LatchPromise<T> onSucceed(Consumer<T> consumer) {
+        this.success = consumer;
+        return this;
+    }
+
+    public void startAsync() {
+        if (started) {
+            return;
+        }
+        Runnable task = getExecutorTask();
+        this.started = true;
+        executor.execute(task);
+    }
+
+    public T startSync() {
+        if (started) {
+            return await();
+        }
+        this.started = true;
+        getExecutorTask().run();
+        return result;
+    }
+
+    private Runnable getExecutorTask() {
+        return () -> {
+            try {
+                this.result = promisedTask.execute(nextStatus);
+                this.status = PromiseStatus.FULFILLED;
+                if (success != null) {
+                    success.accept(result);
+                }
+            } catch (Exception e) {
+                this.status = PromiseStatus.REJECTED;
+            } finally {
+                countDownLatch.countDown();
+            }
+        };
+    }
+
+    public T await() {
+        if (!started) {
+            startAsync();
+        }
+        try {
+            countDownLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    public PromiseStatus getStatus() {
+        return status;
+    }
+}
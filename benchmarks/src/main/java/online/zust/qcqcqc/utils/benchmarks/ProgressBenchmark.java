@@ -0,0 +1,60 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.threads.Tasks;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务列表进度回调的开销：不带进度、每次完成都通知、节流通知
+ * <p>
+ * 运行：java -jar target/benchmarks.jar ProgressBenchmark -prof gc
+ *
+ * @author qcqcqc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgressBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.promiseExecutor();
+    }
+
+    private Tasks.TaskList<Integer> createTaskList() {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 0; i < size; i++) {
+            int finalI = i;
+            taskList.add(() -> finalI);
+        }
+        return taskList;
+    }
+
+    @Benchmark
+    public List<Integer> noProgress() {
+        return createTaskList().awaitAll();
+    }
+
+    @Benchmark
+    public List<Integer> everyCompletion(Blackhole blackhole) {
+        Tasks.TaskList<Integer> taskList = createTaskList();
+        taskList.onShowProgress((done, total) -> blackhole.consume(done));
+        return taskList.awaitAll();
+    }
+
+    @Benchmark
+    public List<Integer> throttled(Blackhole blackhole) {
+        Tasks.TaskList<Integer> taskList = createTaskList();
+        taskList.onShowProgress((done, total) -> blackhole.consume(done), 1000, 100);
+        return taskList.awaitAll();
+    }
+}
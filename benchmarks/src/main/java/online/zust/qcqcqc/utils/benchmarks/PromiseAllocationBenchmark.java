@@ -0,0 +1,83 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.Tasks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个Promise的分配量，配合-prof gc看gc.alloc.rate.norm（字节/次）
+ * 全部同步执行，不经过线程池，只包含Promise本身及其按需创建的对象
+ * <p>
+ * 运行：java -jar target/benchmarks.jar PromiseAllocationBenchmark -prof gc
+ *
+ * @author qcqcqc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:-DoEscapeAnalysis")
+public class PromiseAllocationBenchmark {
+
+    private final Callable<Integer> callable = () -> 1;
+    private final Runnable runnable = () -> {
+    };
+    private Tasks.TaskList<Integer> taskList;
+    private int added;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkSupport.promiseExecutor();
+    }
+
+
+    /**
+     * 最常见的用法：Callable任务，没有回调
+     */
+    @Benchmark
+    public Integer callable() {
+        return Promise.resolve(callable).startSync();
+    }
+
+    /**
+     * PromisedTask任务需要NextStatus
+     */
+    @Benchmark
+    public Integer promisedTask() {
+        return Promise.resolve((status) -> 1).startSync();
+    }
+
+    @Benchmark
+    public Object runnable() {
+        return Promise.resolve(runnable).startSync();
+    }
+
+    /**
+     * 设置了回调时才创建回调对象
+     */
+    @Benchmark
+    public Integer withCallbacks() {
+        return Promise.resolve(callable)
+                .onSucceed((result) -> {
+                })
+                .onFinally((result) -> {
+                })
+                .startSync();
+    }
+
+    /**
+     * 加入任务列表：Promise加上完成计数的钩子
+     * 每1024个任务换一个新列表，避免列表无限增长，列表本身的分配摊到每个任务上很小
+     */
+    @Benchmark
+    public Tasks.TaskList<Integer> taskListAdd() {
+        if ((added++ & 1023) == 0) {
+            taskList = Tasks.createTaskList();
+        }
+        return taskList.add(Promise.resolve(callable));
+    }
+}
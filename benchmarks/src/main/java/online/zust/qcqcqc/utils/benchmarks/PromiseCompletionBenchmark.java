@@ -0,0 +1,90 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.ThreadsUtils;
+import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.PromiseExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Promise完成机制对比：CAS状态字+无锁等待栈 vs CountDownLatch
+ * <p>
+ * 运行：java -jar target/benchmarks.jar PromiseCompletionBenchmark -prof gc
+ *
+ * @author qcqcqc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromiseCompletionBenchmark {
+
+    private Executor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Promise在启动时才获取默认线程池，这里设置后立即生效
+        executor = ThreadsUtils.createExecutor(4, "bench");
+        PromiseExecutor.initExecutor(executor);
+    }
+
+    /**
+     * 同步执行：只衡量创建和完成的开销（分配、状态切换）
+     */
+    @Benchmark
+    public Integer promiseStartSync() {
+        return Promise.resolve((status) -> 1).startSync();
+    }
+
+    @Benchmark
+    public Integer latchStartSync() {
+        return new LatchPromise<Integer>((status) -> 1, executor).startSync();
+    }
+
+    /**
+     * 异步执行并等待：衡量从完成到唤醒等待线程的延迟
+     */
+    @Benchmark
+    public Integer promiseStartAsyncAwait() {
+        return Promise.resolve((status) -> 1).await();
+    }
+
+    @Benchmark
+    public Integer latchStartAsyncAwait() {
+        return new LatchPromise<Integer>((status) -> 1, executor).await();
+    }
+
+    /**
+     * 带成功回调的完成路径
+     */
+    @Benchmark
+    public Integer promiseWithCallback() {
+        return Promise.resolve((status) -> 1).onSucceed((res) -> {
+        }).await();
+    }
+
+    @Benchmark
+    public Integer latchWithCallback() {
+        return new LatchPromise<Integer>((status) -> 1, executor).onSucceed((res) -> {
+        }).await();
+    }
+
+    /**
+     * CompletableFuture基准
+     */
+    @Benchmark
+    public Integer completableFutureJoin() {
+        return CompletableFuture.supplyAsync(() -> 1, executor).join();
+    }
+
+    @Benchmark
+    public Integer completableFutureWithCallback() {
+        return CompletableFuture.supplyAsync(() -> 1, executor).whenComplete((res, e) -> {
+        }).join();
+    }
+}
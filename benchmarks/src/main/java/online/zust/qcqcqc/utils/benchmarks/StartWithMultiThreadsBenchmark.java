@@ -0,0 +1,83 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.threads.Tasks;
+import online.zust.qcqcqc.utils.threads.tasks.CallBackTask;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 列表并行处理：逐个提交、分块提交、限制并发提交，和CompletableFuture对比
+ * cheap为纯计算的廉价任务，blocking为每个元素阻塞100微秒的任务
+ * <p>
+ * 运行：java -jar target/benchmarks.jar StartWithMultiThreadsBenchmark -prof gc
+ *
+ * @author qcqcqc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StartWithMultiThreadsBenchmark {
+
+    @Param({"cheap", "blocking"})
+    public String workload;
+
+    @Param({"1000"})
+    public int size;
+
+    private Executor executor;
+    private List<Integer> items;
+    private CallBackTask<Integer, Integer> task;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = BenchmarkSupport.promiseExecutor();
+        items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        if ("blocking".equals(workload)) {
+            task = (item) -> {
+                BenchmarkSupport.block(100_000L);
+                return item;
+            };
+        } else {
+            task = (item) -> Integer.rotateLeft(item * 31, 7) ^ item;
+        }
+    }
+
+    @Benchmark
+    public List<Integer> perItem() {
+        return Tasks.startWithMultiThreadsSync(items, task);
+    }
+
+    @Benchmark
+    public List<Integer> chunked() {
+        return Tasks.startWithChunksSync(items, task);
+    }
+
+    @Benchmark
+    public List<Integer> maxInFlight() {
+        return Tasks.startWithMultiThreadsSync(items, task, 64);
+    }
+
+    @Benchmark
+    public List<Integer> completableFuture() {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(size);
+        for (Integer item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> task.execute(item), executor));
+        }
+        List<Integer> results = new ArrayList<>(size);
+        for (CompletableFuture<Integer> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+}
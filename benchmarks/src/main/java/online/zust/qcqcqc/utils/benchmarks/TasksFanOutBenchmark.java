@@ -0,0 +1,72 @@
+package online.zust.qcqcqc.utils.benchmarks;
+
+import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.Tasks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扇出等待：创建n个Promise并等待全部完成，和CompletableFuture.allOf对比
+ * <p>
+ * 运行：java -jar target/benchmarks.jar TasksFanOutBenchmark -prof gc
+ *
+ * @author qcqcqc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TasksFanOutBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private Executor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = BenchmarkSupport.promiseExecutor();
+    }
+
+    @Benchmark
+    public List<Integer> tasksAwaitAll() {
+        List<Promise<Integer>> promises = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int finalI = i;
+            promises.add(Promise.resolve(() -> finalI));
+        }
+        return Tasks.awaitAll(promises);
+    }
+
+    @Benchmark
+    public List<Integer> taskListAwaitAll() {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 0; i < size; i++) {
+            int finalI = i;
+            taskList.add(() -> finalI);
+        }
+        return taskList.awaitAll();
+    }
+
+    @Benchmark
+    public List<Integer> completableFutureAllOf() {
+        List<CompletableFuture<Integer>> futures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int finalI = i;
+            futures.add(CompletableFuture.supplyAsync(() -> finalI, executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        List<Integer> results = new ArrayList<>(size);
+        for (CompletableFuture<Integer> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+}
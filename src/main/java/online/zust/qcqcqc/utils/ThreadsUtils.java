@@ -1,10 +1,19 @@
 package online.zust.qcqcqc.utils;
 
+import online.zust.qcqcqc.utils.threads.executors.ConcurrencyLimitedExecutor;
+import online.zust.qcqcqc.utils.threads.executors.PriorityThreadPoolTaskExecutor;
+import online.zust.qcqcqc.utils.threads.executors.ResizableThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author qcqcqc
@@ -26,7 +35,7 @@ public class ThreadsUtils {
 //        new ThreadPoolExecutor.CallerRunsPolicy() // 哪来的去哪里！由调用线程处理该任务
 //        new ThreadPoolExecutor.DiscardPolicy() //不执行新任务，也不抛出异常
 //        new ThreadPoolExecutor.DiscardOldestPolicy() //丢弃队列最前面的任务，然后重新提交被拒绝的任务。
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        ThreadPoolTaskExecutor executor = new ResizableThreadPoolTaskExecutor();
         // 核心线程数
         executor.setCorePoolSize(poolSize);
         // 最大线程数
@@ -45,6 +54,32 @@ public class ThreadsUtils {
         return executor;
     }
 
+    /**
+     * 创建按任务优先级调度的线程池
+     * 排队的任务中优先级高的先执行，等待中的任务按老化时间逐步提升优先级，避免低优先级任务饿死
+     *
+     * @param poolSize         核心线程数
+     * @param maxPoolSize      最大线程数
+     * @param queueCapacity    任务队列容量
+     * @param keepAliveSeconds 线程的最大空闲时间
+     * @param agingMillis      老化时间，低优先级任务每等待这么久，优先级相当于提升1，为0时按严格优先级调度
+     * @param policy           拒绝策略
+     * @param prefix           线程名前缀
+     * @return 线程池
+     */
+    public static Executor createPriorityExecutor(int poolSize, int maxPoolSize, int queueCapacity, int keepAliveSeconds, long agingMillis, RejectedExecutionHandler policy, String prefix) {
+        PriorityThreadPoolTaskExecutor executor = new PriorityThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setKeepAliveSeconds(keepAliveSeconds);
+        executor.setThreadNamePrefix(getNamePrefix(prefix));
+        executor.setRejectedExecutionHandler(policy);
+        executor.setAgingMillis(agingMillis);
+        executor.initialize();
+        return executor;
+    }
+
     /**
      * 创建线程池
      *
@@ -93,6 +128,93 @@ public class ThreadsUtils {
         return createExecutor(poolSize, null);
     }
 
+    /**
+     * 创建分治任务使用的工作窃取线程池
+     * 任务在线程内部fork/join子任务时，等待的线程会去执行其他子任务，不会像普通线程池那样因为父任务阻塞而饿死
+     *
+     * @param parallelism 并行度
+     * @param prefix      线程名前缀
+     * @return 线程池
+     */
+    public static ForkJoinPool createForkJoinPool(int parallelism, String prefix) {
+        String namePrefix = getNamePrefix(prefix);
+        AtomicInteger index = new AtomicInteger();
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = (pool) -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(namePrefix + index.incrementAndGet());
+            return thread;
+        };
+        return new ForkJoinPool(Math.max(1, parallelism), factory, null, false);
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程（JDK 21及以上）
+     *
+     * @return 是否支持
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            virtualThreadFactory("probe-");
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器
+     * 适合大量阻塞在IO上的任务，不需要调整线程数
+     *
+     * @param prefix 线程名前缀
+     * @return 执行器
+     * @throws UnsupportedOperationException 当前JVM不支持虚拟线程
+     */
+    public static Executor createVirtualExecutor(String prefix) {
+        ThreadFactory factory = virtualThreadFactory(getNamePrefix(prefix));
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (Executor) method.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的执行器，并限制最大并发数
+     * 超过上限的任务排队等待，不会阻塞提交线程
+     *
+     * @param maxConcurrency 最大并发数，小于等于0表示不限制
+     * @param prefix         线程名前缀
+     * @return 执行器
+     * @throws UnsupportedOperationException 当前JVM不支持虚拟线程
+     */
+    public static Executor createVirtualExecutor(int maxConcurrency, String prefix) {
+        Executor executor = createVirtualExecutor(prefix);
+        if (maxConcurrency <= 0) {
+            return executor;
+        }
+        return new ConcurrencyLimitedExecutor(executor, maxConcurrency);
+    }
+
+    /**
+     * 通过反射创建虚拟线程工厂，这样在JDK 17上编译和运行时不会依赖JDK 21的API
+     *
+     * @param namePrefix 线程名前缀
+     * @return 线程工厂
+     * @throws UnsupportedOperationException 当前JVM不支持虚拟线程
+     */
+    private static ThreadFactory virtualThreadFactory(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK 19/20未开启预览特性时ofVirtual会抛出UnsupportedOperationException（包装在InvocationTargetException中）
+            throw new UnsupportedOperationException("virtual threads are not supported by this JVM", e);
+        }
+    }
+
     /**
      * 获取线程名前缀
      *
@@ -1,10 +1,15 @@
 package online.zust.qcqcqc.utils.config;
 
 import online.zust.qcqcqc.utils.threads.PromiseExecutor;
+import online.zust.qcqcqc.utils.threads.metrics.PromiseMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
@@ -49,4 +54,18 @@ public class ThreadsUtilsAutoInject {
         }
         return applicationContext.getBean(name);
     }
+
+    /**
+     * classpath中有Micrometer时注册Promise指标，由Spring Boot Actuator绑定到MeterRegistry
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    @ConditionalOnProperty(prefix = "promise.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class PromiseMetricsConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public PromiseMetrics promiseMetrics() {
+            return new PromiseMetrics();
+        }
+    }
 }
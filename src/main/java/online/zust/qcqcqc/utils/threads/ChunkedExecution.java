@@ -0,0 +1,198 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.tasks.CallBackTask;
+import online.zust.qcqcqc.utils.threads.tasks.ExceptionHandleTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分块执行列表任务
+ * 先在当前线程上执行前几个元素测出单个元素的耗时，再把剩余元素切成若干块，每块作为一个任务提交，
+ * 结果按下标写入预先分配好的数组，所以结果顺序和输入一致
+ *
+ * @param <T> 元素类型
+ * @param <R> 结果类型
+ * @author qcqcqc
+ */
+final class ChunkedExecution<T, R> {
+    private static final Logger log = LoggerFactory.getLogger(ChunkedExecution.class);
+    /**
+     * 每个线程大约分到的块数，留一点余量给执行快慢不均的线程
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+    /**
+     * 采样的最大元素个数
+     */
+    private static final int MAX_SAMPLES = 16;
+    /**
+     * 采样的最长时间
+     */
+    private static final long SAMPLE_BUDGET_NANOS = 1_000_000L;
+    /**
+     * 一块至少要执行的时间，低于这个值时调度开销占比太高
+     */
+    private static final long MIN_CHUNK_NANOS = 100_000L;
+
+    private final List<T> items;
+    private final CallBackTask<T, R> task;
+    private final ExceptionHandleTask<R> exceptionHandleTask;
+    private final Object[] results;
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    private final Promise<List<R>> promise;
+
+    private ChunkedExecution(List<T> items, CallBackTask<T, R> task, ExceptionHandleTask<R> exceptionHandleTask, boolean async) {
+        this.items = items instanceof RandomAccess ? items : new ArrayList<>(items);
+        this.task = task;
+        this.exceptionHandleTask = exceptionHandleTask;
+        this.results = new Object[this.items.size()];
+        this.promise = Promise.deferred(async ? (self) -> submitPlan() : (self) -> plan());
+    }
+
+    /**
+     * 创建分块执行的Promise，启动后开始执行
+     *
+     * @param items               元素列表
+     * @param task                对每个元素执行的任务
+     * @param exceptionHandleTask 单个元素的异常处理，为null时只记录日志，对应结果为null
+     * @param async               为true时采样和切块也在线程池中进行，否则在启动Promise的线程上进行
+     * @param <T>                 元素类型
+     * @param <R>                 结果类型
+     * @return 所有元素执行完后得到结果列表的Promise
+     */
+    static <T, R> Promise<List<R>> of(List<T> items, CallBackTask<T, R> task, ExceptionHandleTask<R> exceptionHandleTask, boolean async) {
+        return new ChunkedExecution<>(items, task, exceptionHandleTask, async).promise;
+    }
+
+    private void submitPlan() {
+        try {
+            PromiseExecutor.getPromiseExecutor().execute(this::plan);
+        } catch (RejectedExecutionException e) {
+            plan();
+        }
+    }
+
+    /**
+     * 采样并切块，最后一块由当前线程执行
+     */
+    private void plan() {
+        try {
+            int size = results.length;
+            long start = System.nanoTime();
+            long elapsed = 0;
+            int sampled = 0;
+            while (sampled < size && sampled < MAX_SAMPLES && elapsed < SAMPLE_BUDGET_NANOS) {
+                runItem(sampled++);
+                elapsed = System.nanoTime() - start;
+            }
+            int remaining = size - sampled;
+            if (remaining == 0) {
+                finish();
+                return;
+            }
+            long perItemNanos = Math.max(1, elapsed / sampled);
+            if (remaining * perItemNanos <= MIN_CHUNK_NANOS) {
+                // 剩下的工作量还不够一块，直接在当前线程做完
+                runRange(sampled, size);
+                finish();
+                return;
+            }
+            Executor executor = PromiseExecutor.getPromiseExecutor();
+            int maxChunks = PromiseExecutor.getParallelism(executor) * CHUNKS_PER_WORKER;
+            int chunkSize = (int) Math.max(ceilDiv(remaining, maxChunks), ceilDiv(MIN_CHUNK_NANOS, perItemNanos));
+            int chunks = (int) ceilDiv(remaining, chunkSize);
+            pendingChunks.set(chunks);
+            int from = sampled;
+            for (int i = 0; i < chunks - 1; i++) {
+                int chunkFrom = from;
+                int chunkTo = from + chunkSize;
+                Chunk chunk = new Chunk(chunkFrom, chunkTo);
+                try {
+                    executor.execute(chunk);
+                } catch (RejectedExecutionException e) {
+                    chunk.run();
+                }
+                from = chunkTo;
+            }
+            runChunk(from, size);
+        } catch (RuntimeException e) {
+            // 例如线程池已经关闭，没有提交出去的元素不会再执行
+            promise.completeExceptionally(e);
+        } catch (Error e) {
+            promise.completeExceptionally(new RuntimeException(e));
+            throw e;
+        }
+    }
+
+    private void runChunk(int from, int to) {
+        if (promise.isDone()) {
+            return;
+        }
+        try {
+            runRange(from, to);
+        } catch (Error e) {
+            promise.completeExceptionally(new RuntimeException(e));
+            throw e;
+        }
+        if (pendingChunks.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private void runRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            runItem(i);
+        }
+    }
+
+    private void runItem(int index) {
+        try {
+            results[index] = task.execute(items.get(index));
+        } catch (Exception e) {
+            if (exceptionHandleTask == null) {
+                log.error(e.getMessage());
+                return;
+            }
+            try {
+                results[index] = exceptionHandleTask.execute(e);
+            } catch (Exception ex) {
+                log.error(ex.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void finish() {
+        // 各块写入的结果通过pendingChunks的原子操作对这里可见
+        promise.complete(new ArrayList<>((List<R>) Arrays.asList(results)));
+    }
+
+    /**
+     * 提交到线程池的一块
+     * 被拒绝策略丢弃时会被取消，这时这一块不会再执行，直接让整个Promise失败，而不是一直等待它完成
+     */
+    private final class Chunk extends FutureTask<Void> {
+        private Chunk(int from, int to) {
+            super(() -> runChunk(from, to), null);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                promise.completeExceptionally(new RejectedExecutionException("chunk discarded by executor"));
+            }
+        }
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return (x + y - 1) / y;
+    }
+}
@@ -0,0 +1,481 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.CircuitState;
+import online.zust.qcqcqc.utils.threads.exceptions.CircuitOpenException;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseInterruptedException;
+import online.zust.qcqcqc.utils.threads.tasks.PromisedTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 熔断器
+ * 关闭时在滑动时间窗口内统计失败率和慢调用比例，调用数达到minimumCalls且任一比例超过阈值时打开；
+ * 打开后创建的Promise启动时直接以CircuitOpenException拒绝，不进入线程池；openDuration之后进入半开，
+ * 只放行halfOpenCalls个探测调用，全部成功则关闭，任一失败或过慢则重新打开。
+ * <p>
+ * 窗口由若干个桶组成，每个桶只用LongAdder计数，桶过期时CAS换成新桶；状态转换也是对状态对象的一次CAS，
+ * 调用过程中不加锁。熔断器可以被多个Promise共享，配置需要在使用之前设置
+ *
+ * @author qcqcqc
+ */
+public class CircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final VarHandle PHASE;
+
+    static {
+        try {
+            PHASE = MethodHandles.lookup().findVarHandle(CircuitBreaker.class, "phase", Phase.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String name;
+    private double failureRateThreshold = 0.5;
+    private double slowCallRateThreshold = 1.0;
+    private long slowCallNanos = Duration.ofSeconds(5).toNanos();
+    private long windowNanos = Duration.ofSeconds(10).toNanos();
+    private int windowBuckets = 10;
+    private int minimumCalls = 10;
+    private long openNanos = Duration.ofSeconds(30).toNanos();
+    private int halfOpenCalls = 3;
+    private Predicate<Exception> recordable = (e) -> !(e instanceof InterruptedException || e instanceof PromiseInterruptedException);
+    private final LongAdder notPermitted = new LongAdder();
+    /**
+     * 当前状态，每次状态转换都换成新的对象
+     */
+    private volatile Phase phase;
+
+    /**
+     * 创建熔断器，默认10秒窗口内至少10次调用、失败率达到50%时打开，打开30秒后用3次调用探测
+     *
+     * @param name 名称，用于日志和异常信息
+     */
+    public CircuitBreaker(String name) {
+        this.name = name;
+        this.phase = closed();
+    }
+
+    /**
+     * 设置失败率阈值
+     *
+     * @param threshold 失败率，(0, 1]
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker failureRateThreshold(double threshold) {
+        this.failureRateThreshold = checkRate(threshold);
+        return this;
+    }
+
+    /**
+     * 设置慢调用比例阈值，默认为1，即所有调用都慢时才打开
+     *
+     * @param threshold 慢调用比例，(0, 1]
+     * @param slowCall  执行时间达到这个值算慢调用
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker slowCallRateThreshold(double threshold, Duration slowCall) {
+        this.slowCallRateThreshold = checkRate(threshold);
+        this.slowCallNanos = slowCall.toNanos();
+        return this;
+    }
+
+    /**
+     * 设置滑动窗口，会清空当前统计并回到关闭状态
+     *
+     * @param window  窗口长度
+     * @param buckets 桶数，越多窗口滑动越平滑
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker slidingWindow(Duration window, int buckets) {
+        if (buckets < 1 || window.toNanos() < buckets) {
+            throw new IllegalArgumentException("invalid sliding window: " + window + ", " + buckets + " buckets");
+        }
+        this.windowNanos = window.toNanos();
+        this.windowBuckets = buckets;
+        this.phase = closed();
+        return this;
+    }
+
+    /**
+     * 设置计算比例所需的最少调用数，窗口内调用数不足时不会打开
+     *
+     * @param minimumCalls 最少调用数
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker minimumCalls(int minimumCalls) {
+        this.minimumCalls = Math.max(1, minimumCalls);
+        return this;
+    }
+
+    /**
+     * 设置打开状态的持续时间，之后进入半开
+     *
+     * @param duration 持续时间
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker openDuration(Duration duration) {
+        this.openNanos = duration.toNanos();
+        return this;
+    }
+
+    /**
+     * 设置半开状态放行的探测调用数
+     *
+     * @param calls 探测调用数
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker halfOpenCalls(int calls) {
+        this.halfOpenCalls = Math.max(1, calls);
+        return this;
+    }
+
+    /**
+     * 设置哪些异常算作失败，其他异常既不算失败也不算成功，默认中断以外的异常都算失败
+     *
+     * @param recordable 条件
+     * @return CircuitBreaker
+     */
+    public CircuitBreaker recordIf(Predicate<Exception> recordable) {
+        this.recordable = recordable;
+        return this;
+    }
+
+    /**
+     * 创建受熔断器保护的Promise
+     * 熔断器打开时返回的Promise在启动时直接以CircuitOpenException拒绝，不进入线程池，可以用onException提供降级结果
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return Promise
+     */
+    public <T> Promise<T> resolve(Callable<T> task) {
+        return isOpen() ? rejected() : Promise.resolve(wrap(task));
+    }
+
+    /**
+     * 创建受熔断器保护的Promise
+     * 熔断器打开时返回的Promise在启动时直接以CircuitOpenException拒绝，不进入线程池，可以用onException提供降级结果
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return Promise
+     */
+    public <T> Promise<T> resolve(PromisedTask<T> task) {
+        return isOpen() ? rejected() : Promise.resolve(wrap(task));
+    }
+
+    /**
+     * 包装任务，执行前检查熔断器，执行后记录结果
+     * Promise创建时熔断器还是关闭的，到执行时已经打开，任务会直接抛出CircuitOpenException
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 包装后的任务
+     */
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            Phase p = acquire();
+            long start = System.nanoTime();
+            try {
+                T result = task.call();
+                onSuccess(p, start);
+                return result;
+            } catch (Exception e) {
+                onError(p, start, e);
+                throw e;
+            } catch (Error e) {
+                onError(p, start, new RuntimeException(e));
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * 包装任务，执行前检查熔断器，执行后记录结果
+     *
+     * @param task 任务
+     * @param <T>  结果类型
+     * @return 包装后的任务
+     */
+    public <T> PromisedTask<T> wrap(PromisedTask<T> task) {
+        return (status) -> {
+            Phase p = acquire();
+            long start = System.nanoTime();
+            try {
+                T result = task.execute(status);
+                onSuccess(p, start);
+                return result;
+            } catch (Exception e) {
+                onError(p, start, e);
+                throw e;
+            } catch (Error e) {
+                onError(p, start, new RuntimeException(e));
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * 获取当前状态，打开状态到期后在下一次调用时才转为半开
+     *
+     * @return 状态
+     */
+    public CircuitState getState() {
+        return phase.state;
+    }
+
+    /**
+     * 获取当前窗口内的失败率
+     *
+     * @return 失败率，关闭状态以外或窗口内没有调用时为0
+     */
+    public double getFailureRate() {
+        Window w = phase.window;
+        if (w == null) {
+            return 0;
+        }
+        long[] counts = w.counts(System.nanoTime());
+        return counts[0] == 0 ? 0 : (double) counts[1] / counts[0];
+    }
+
+    /**
+     * 获取被拒绝的调用数
+     *
+     * @return 被拒绝的调用数
+     */
+    public long getNotPermittedCount() {
+        return notPermitted.sum();
+    }
+
+    /**
+     * 回到关闭状态并清空统计
+     */
+    public void reset() {
+        transition(phase, closed());
+    }
+
+    private boolean isOpen() {
+        Phase p = phase;
+        return p.state == CircuitState.OPEN && System.nanoTime() - p.since < openNanos;
+    }
+
+    private <T> Promise<T> rejected() {
+        notPermitted.increment();
+        CircuitOpenException e = openException();
+        return Promise.deferred((self) -> self.completeExceptionally(e));
+    }
+
+    private CircuitOpenException openException() {
+        return new CircuitOpenException("circuit breaker " + name + " is open");
+    }
+
+    /**
+     * 获取执行许可
+     *
+     * @return 获取许可时的状态，执行结束后记录到这个状态
+     * @throws CircuitOpenException 熔断器打开或半开状态的探测名额已用完
+     */
+    private Phase acquire() {
+        for (;;) {
+            Phase p = phase;
+            if (p.state == CircuitState.CLOSED) {
+                return p;
+            }
+            if (p.state == CircuitState.OPEN) {
+                if (System.nanoTime() - p.since < openNanos) {
+                    break;
+                }
+                transition(p, new Phase(CircuitState.HALF_OPEN, null, halfOpenCalls, 0));
+                continue;
+            }
+            if (p.permits.getAndDecrement() > 0) {
+                return p;
+            }
+            break;
+        }
+        notPermitted.increment();
+        throw openException();
+    }
+
+    private void onSuccess(Phase p, long start) {
+        long now = System.nanoTime();
+        record(p, now, false, now - start >= slowCallNanos);
+    }
+
+    private void onError(Phase p, long start, Exception e) {
+        long now = System.nanoTime();
+        boolean failed;
+        try {
+            failed = recordable == null || recordable.test(e);
+        } catch (RuntimeException ex) {
+            failed = true;
+        }
+        if (failed) {
+            record(p, now, true, now - start >= slowCallNanos);
+        } else if (p.state == CircuitState.HALF_OPEN) {
+            // 不计入统计的异常归还探测名额
+            p.permits.incrementAndGet();
+        }
+    }
+
+    private void record(Phase p, long now, boolean failed, boolean slow) {
+        if (p.state == CircuitState.CLOSED) {
+            p.window.record(now, failed, slow);
+            // 成功且不慢的调用只会降低比例，不需要判断
+            if ((failed || slow) && shouldOpen(p.window.counts(now))) {
+                transition(p, open(now));
+            }
+            return;
+        }
+        if (p.state != CircuitState.HALF_OPEN) {
+            return;
+        }
+        if (failed || slow) {
+            transition(p, open(now));
+        } else if (p.successes.incrementAndGet() >= halfOpenCalls) {
+            transition(p, closed());
+        }
+    }
+
+    private boolean shouldOpen(long[] counts) {
+        long calls = counts[0];
+        return calls >= minimumCalls
+                && (counts[1] >= calls * failureRateThreshold || counts[2] >= calls * slowCallRateThreshold);
+    }
+
+    /**
+     * 状态转换，只有当前状态还是from时才生效，调用开始之前的旧状态上的结果会被忽略
+     *
+     * @param from 旧状态
+     * @param to   新状态
+     */
+    private void transition(Phase from, Phase to) {
+        if (PHASE.compareAndSet(this, from, to) && from.state != to.state) {
+            log.info("circuit breaker {} {} -> {}", name, from.state, to.state);
+        }
+    }
+
+    private Phase closed() {
+        return new Phase(CircuitState.CLOSED, new Window(windowNanos, windowBuckets), 0, 0);
+    }
+
+    private Phase open(long now) {
+        return new Phase(CircuitState.OPEN, null, 0, now);
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("rate threshold must be in (0, 1]: " + rate);
+        }
+        return rate;
+    }
+
+    /**
+     * 状态对象，不可变的状态加上这个状态自己的计数
+     */
+    private static final class Phase {
+        private final CircuitState state;
+        /**
+         * 关闭状态的滑动窗口
+         */
+        private final Window window;
+        /**
+         * 半开状态剩余的探测名额
+         */
+        private final AtomicInteger permits;
+        /**
+         * 半开状态成功的探测数
+         */
+        private final AtomicInteger successes;
+        /**
+         * 打开的时间
+         */
+        private final long since;
+
+        private Phase(CircuitState state, Window window, int permits, long since) {
+            this.state = state;
+            this.window = window;
+            this.since = since;
+            this.permits = state == CircuitState.HALF_OPEN ? new AtomicInteger(permits) : null;
+            this.successes = state == CircuitState.HALF_OPEN ? new AtomicInteger() : null;
+        }
+    }
+
+    /**
+     * 滑动时间窗口，桶数组按时间循环使用
+     */
+    private static final class Window {
+        private final long bucketNanos;
+        private final long origin = System.nanoTime();
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        private Window(long windowNanos, int size) {
+            this.bucketNanos = windowNanos / size;
+            this.buckets = new AtomicReferenceArray<>(size);
+        }
+
+        private void record(long now, boolean failed, boolean slow) {
+            long epoch = (now - origin) / bucketNanos;
+            int i = (int) (epoch % buckets.length());
+            Bucket b = buckets.get(i);
+            while (b == null || b.epoch < epoch) {
+                // 桶已经过期，换成新桶；CAS失败说明别的线程已经换过，重新读
+                Bucket fresh = new Bucket(epoch);
+                if (buckets.compareAndSet(i, b, fresh)) {
+                    b = fresh;
+                    break;
+                }
+                b = buckets.get(i);
+            }
+            b.calls.increment();
+            if (failed) {
+                b.failures.increment();
+            }
+            if (slow) {
+                b.slowCalls.increment();
+            }
+        }
+
+        /**
+         * 统计窗口内的调用
+         *
+         * @param now 当前时间
+         * @return 调用数、失败数、慢调用数
+         */
+        private long[] counts(long now) {
+            long epoch = (now - origin) / bucketNanos;
+            long[] counts = new long[3];
+            for (int i = 0; i < buckets.length(); i++) {
+                Bucket b = buckets.get(i);
+                if (b == null || epoch - b.epoch >= buckets.length()) {
+                    continue;
+                }
+                counts[0] += b.calls.sum();
+                counts[1] += b.failures.sum();
+                counts[2] += b.slowCalls.sum();
+            }
+            return counts;
+        }
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.tasks.CallBackTask;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 分治任务
+ * 问题足够小时直接求解，否则拆分成子问题，除最后一个外全部fork，最后一个在当前线程计算，再按顺序合并子结果
+ *
+ * @param <P> 问题类型
+ * @param <R> 结果类型
+ * @author qcqcqc
+ */
+final class DivideAndConquerTask<P, R> extends RecursiveTask<R> {
+    private final P problem;
+    private final Predicate<P> isSmall;
+    private final CallBackTask<P, R> solve;
+    private final Function<P, List<P>> split;
+    private final BinaryOperator<R> merge;
+
+    DivideAndConquerTask(P problem, Predicate<P> isSmall, CallBackTask<P, R> solve, Function<P, List<P>> split, BinaryOperator<R> merge) {
+        this.problem = problem;
+        this.isSmall = isSmall;
+        this.solve = solve;
+        this.split = split;
+        this.merge = merge;
+    }
+
+    @Override
+    protected R compute() {
+        if (isSmall.test(problem)) {
+            return solve.execute(problem);
+        }
+        List<P> parts = split.apply(problem);
+        if (parts == null || parts.isEmpty()) {
+            return solve.execute(problem);
+        }
+        int last = parts.size() - 1;
+        @SuppressWarnings("unchecked")
+        DivideAndConquerTask<P, R>[] forked = new DivideAndConquerTask[last];
+        for (int i = 0; i < last; i++) {
+            forked[i] = child(parts.get(i));
+            forked[i].fork();
+        }
+        R tail = child(parts.get(last)).compute();
+        // 倒序join，最近fork的任务还在本线程队列顶部，大概率直接在本线程执行
+        R result = tail;
+        for (int i = last - 1; i >= 0; i--) {
+            result = merge.apply(forked[i].join(), result);
+        }
+        return result;
+    }
+
+    private DivideAndConquerTask<P, R> child(P part) {
+        return new DivideAndConquerTask<>(part, isSmall, solve, split, merge);
+    }
+}
@@ -1,14 +1,30 @@
 package online.zust.qcqcqc.utils.threads;
 
 import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseInterruptedException;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseTimeoutException;
+import online.zust.qcqcqc.utils.threads.executors.PrioritizedTask;
+import online.zust.qcqcqc.utils.threads.tasks.CallBackTask;
 import online.zust.qcqcqc.utils.threads.tasks.ExceptionHandleTask;
 import online.zust.qcqcqc.utils.threads.tasks.PromisedTask;
+import online.zust.qcqcqc.utils.threads.timer.TimerHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 
 /**
@@ -18,57 +34,150 @@ import java.util.function.Consumer;
  */
 public class Promise<T> {
     /**
-     * 线程池
-     * 在使用Promise之前需要设置线程池
-     * 工具类中自动注入线程池
+     * 日志
      */
-    private static final Executor PROMISE_EXECUTOR = PromiseExecutor.getPromiseExecutor();
+    private static final Logger log = LoggerFactory.getLogger(Promise.class);
     /**
-     * 设置执行状态，1表示未执行，0表示已执行
+     * 生命周期监控，为null时不记录时间
      */
-    private final CountDownLatch countDownLatch;
+    private static volatile PromiseMonitor monitor;
     /**
-     * 日志
+     * 内部状态：未启动
      */
-    private static final Logger log = LoggerFactory.getLogger(Promise.class);
+    private static final int NEW = 0;
     /**
-     * 任务
+     * 内部状态：已启动（已提交或正在执行）
      */
-    private final PromisedTask<T> promisedTask;
+    private static final int RUNNING = 1;
     /**
-     * 成功回调
+     * 内部状态：正在完成（已确定结果，正在执行回调）
      */
-    private Consumer<T> success;
+    private static final int COMPLETING = 2;
     /**
-     * 失败回调
+     * 内部状态：已完成
      */
-    private Consumer<T> fail;
+    private static final int FULFILLED = 3;
     /**
-     * 最终回调
+     * 内部状态：已拒绝
      */
-    private Consumer<T> finallyCall;
+    private static final int REJECTED = 4;
     /**
-     * 异常处理
+     * 内部状态：已取消
      */
-    private ExceptionHandleTask<T> handleException;
+    private static final int CANCELED = 5;
     /**
-     * 结果
+     * 自旋等待次数，多核下结果往往很快就绪，先自旋再挂起线程
      */
-    private T result;
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 64 : 0;
     /**
-     * 状态
+     * 完成栈的终结标记，栈头为该值时表示Promise已完成
      */
-    private PromiseStatus status;
+    private static final Completion DONE = new CallBack(null);
     /**
-     * 下一步状态
+     * 取消线程正在中断执行线程时，runner字段的占位值
      */
-    private final NextStatus nextStatus;
+    private static final Thread INTERRUPTING = new Thread("promise-interrupting");
+    private static final VarHandle STATE;
+    private static final VarHandle COMPLETIONS;
+    private static final VarHandle RUNNER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Promise.class, "state", int.class);
+            COMPLETIONS = lookup.findVarHandle(Promise.class, "completions", Completion.class);
+            RUNNER = lookup.findVarHandle(Promise.class, "runner", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
-     * 是否已经开始
+     * 任务类型：PromisedTask
+     */
+    private static final byte PROMISED_TASK = 1;
+    /**
+     * 任务类型：Callable
      */
-    private boolean started;
+    private static final byte CALLABLE_TASK = 2;
+    /**
+     * 任务类型：Runnable
+     */
+    private static final byte RUNNABLE_TASK = 3;
 
+    /**
+     * 任务，直接保存传入的PromisedTask、Callable或Runnable，不再包装一层；派生Promise为null
+     */
+    private final Object task;
+    /**
+     * 任务类型
+     */
+    private final byte taskKind;
+    /**
+     * 派生Promise（没有自己的任务）启动时执行的动作，一般是启动上游Promise
+     */
+    private final Consumer<Promise<T>> source;
+    /**
+     * 回调，大部分Promise不设置回调，第一次设置时才创建
+     */
+    private Callbacks<T> callbacks;
+    /**
+     * 结果，在状态变为完成之前写入，由state的volatile写保证可见性
+     */
+    private T result;
+    /**
+     * 拒绝原因：任务抛出的异常，或用户拒绝时生成的异常
+     */
+    private Exception cause;
+    /**
+     * 状态，所有状态转换都通过CAS完成
+     */
+    private volatile int state;
+    /**
+     * 等待线程和完成回调组成的无锁栈
+     */
+    private volatile Completion completions;
+    /**
+     * 正在执行任务的线程，用于取消时中断
+     */
+    private volatile Thread runner;
+    /**
+     * 已提交到线程池但还没有开始执行的任务，用于取消时从队列中移除
+     */
+    private Runnable queuedTask;
+    /**
+     * 任务提交到的线程池
+     */
+    private Executor queuedExecutor;
+    /**
+     * 执行任务的线程池，为null时在启动时使用默认的Promise线程池
+     */
+    private Executor executor;
+    /**
+     * 优先级，提交到优先级线程池时越大越先执行
+     */
+    private int priority;
+    /**
+     * 是否被PromiseTracer采样
+     */
+    private final boolean traced;
+    /**
+     * 创建时间，只在被采样时记录
+     */
+    private long createdAt;
+    /**
+     * 第一次提交到线程池的时间，只在设置了监控或被采样时记录
+     */
+    private long submittedAt;
+    /**
+     * 所有执行（包括重试）在线程池队列中等待的时间之和，不包括重试退避和等待限流许可的时间
+     * 和executeNanos一样只由执行任务的线程读写，前后两次执行之间由线程池提交建立happens-before
+     */
+    private long queueNanos;
+    /**
+     * 所有执行（包括重试）的执行时间之和
+     */
+    private long executeNanos;
     /**
      * 下一步状态
      */
@@ -77,12 +186,36 @@ public class Promise<T> {
          * 状态
          */
         private PromiseStatus status;
+        /**
+         * 所属的Promise
+         */
+        private final Promise<?> promise;
 
         /**
          * 构造函数
          */
         public NextStatus() {
+            this(null);
+        }
+
+        /**
+         * 构造函数
+         *
+         * @param promise 所属的Promise
+         */
+        NextStatus(Promise<?> promise) {
             this.status = PromiseStatus.FULFILLED;
+            this.promise = promise;
+        }
+
+        /**
+         * 所属的Promise是否已被取消
+         * 长时间运行的任务应当定期检查，被取消后尽快返回
+         *
+         * @return 是否已被取消
+         */
+        public boolean isCancelled() {
+            return promise != null && promise.isCancelled();
         }
 
         /**
@@ -93,175 +226,952 @@ public class Promise<T> {
             this.status = PromiseStatus.FULFILLED;
         }
 
-        /**
-         * 拒绝
-         * 下一步进入异常回调
-         */
-        public void reject() {
-            this.status = PromiseStatus.REJECTED;
+        /**
+         * 拒绝
+         * 下一步进入异常回调
+         */
+        public void reject() {
+            this.status = PromiseStatus.REJECTED;
+        }
+
+        /**
+         * 取消
+         * 下一步直接进入最终回调
+         */
+        public void terminated() {
+            this.status = PromiseStatus.CANCELED;
+        }
+    }
+
+    /**
+     * 用户设置的回调、重试策略和限流器
+     *
+     * @param <T> 结果类型
+     */
+    private static final class Callbacks<T> {
+        /**
+         * 成功回调
+         */
+        private Consumer<T> success;
+        /**
+         * 失败回调
+         */
+        private Consumer<T> fail;
+        /**
+         * 最终回调
+         */
+        private Consumer<T> finallyCall;
+        /**
+         * 异常处理
+         */
+        private ExceptionHandleTask<T> handleException;
+        /**
+         * 重试策略
+         */
+        private RetryPolicy retryPolicy;
+        /**
+         * 限流器
+         */
+        private RateLimiter rateLimiter;
+        /**
+         * 本次执行的重试状态，第一次执行时创建，不会被复制
+         */
+        private Promise<T>.Retry retry;
+
+        private Callbacks<T> copy() {
+            Callbacks<T> copy = new Callbacks<>();
+            copy.success = success;
+            copy.fail = fail;
+            copy.finallyCall = finallyCall;
+            copy.handleException = handleException;
+            copy.retryPolicy = retryPolicy;
+            copy.rateLimiter = rateLimiter;
+            return copy;
+        }
+    }
+
+    /**
+     * 完成栈节点
+     */
+    abstract static class Completion {
+        /**
+         * 下一个节点
+         */
+        Completion next;
+
+        /**
+         * Promise完成时触发
+         */
+        abstract void fire();
+    }
+
+    /**
+     * 等待结果的线程
+     */
+    static final class Waiter extends Completion {
+        private volatile Thread thread = Thread.currentThread();
+
+        @Override
+        void fire() {
+            Thread t = thread;
+            if (t != null) {
+                thread = null;
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /**
+     * 完成回调
+     */
+    static final class CallBack extends Completion {
+        private final Runnable action;
+
+        CallBack(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        void fire() {
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 构造函数
+     * 没有任务的是派生Promise，由上游完成时的回调来完成
+     *
+     * @param task     任务
+     * @param taskKind 任务类型
+     * @param source   派生Promise启动时执行的动作，参数是派生Promise自身
+     */
+    private Promise(Object task, byte taskKind, Consumer<Promise<T>> source) {
+        this.task = task;
+        this.taskKind = taskKind;
+        this.source = source;
+        this.traced = task != null && PromiseTracer.sample();
+        if (traced) {
+            this.createdAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 创建一个没有任务的派生Promise，由外部调用complete系列方法来完成
+     *
+     * @param source 启动时执行的动作，参数是派生Promise自身，一般用来启动上游Promise，可以为null
+     * @param <T>    泛型
+     * @return Promise
+     */
+    static <T> Promise<T> deferred(Consumer<Promise<T>> source) {
+        return new Promise<>(null, (byte) 0, source);
+    }
+
+    /**
+     * 创建一个Promise
+     *
+     * @param consumer 任务
+     * @param <T>      泛型
+     * @return Promise
+     */
+    public static <T> Promise<T> resolve(PromisedTask<T> consumer) {
+        return new Promise<>(consumer, PROMISED_TASK, null);
+    }
+
+    /**
+     * 创建一个Promise
+     *
+     * @param consumer 任务
+     * @param <T>      泛型
+     * @return Promise
+     */
+    public static <T> Promise<T> resolve(Callable<T> consumer) {
+        return new Promise<>(consumer, CALLABLE_TASK, null);
+    }
+
+    /**
+     * 创建一个Promise
+     *
+     * @param consumer 任务
+     * @return Promise
+     */
+    public static Promise<?> resolve(Runnable consumer) {
+        return new Promise<>(consumer, RUNNABLE_TASK, null);
+    }
+
+    /**
+     * 成功回调
+     *
+     * @param consumer 回调
+     * @return Promise
+     */
+    public Promise<T> onSucceed(Consumer<T> consumer) {
+        callbacks().success = consumer;
+        return this;
+    }
+
+    /**
+     * 失败回调
+     *
+     * @param consumer 回调
+     * @return Promise
+     */
+    public Promise<T> onFail(Consumer<T> consumer) {
+        callbacks().fail = consumer;
+        return this;
+    }
+
+    /**
+     * 最终回调
+     *
+     * @param consumer 回调
+     */
+    public Promise<T> onFinally(Consumer<T> consumer) {
+        callbacks().finallyCall = consumer;
+        return this;
+    }
+
+    /**
+     * 异常处理
+     *
+     * @param exceptionExceptionHandleTask 回调
+     * @return Promise
+     */
+    public Promise<T> onException(ExceptionHandleTask<T> exceptionExceptionHandleTask) {
+        callbacks().handleException = exceptionExceptionHandleTask;
+        return this;
+    }
+
+    private Callbacks<T> callbacks() {
+        Callbacks<T> c = callbacks;
+        if (c == null) {
+            c = new Callbacks<>();
+            callbacks = c;
+        }
+        return c;
+    }
+
+    /**
+     * 指定执行任务的线程池，需要在启动之前设置
+     *
+     * @param executor 线程池，为null时使用默认的Promise线程池
+     * @return Promise
+     */
+    public Promise<T> on(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 指定执行任务的线程池，需要在启动之前设置
+     *
+     * @param executorName promise.executors下配置的线程池名称
+     * @return Promise
+     * @throws RuntimeException 没有这个名称的线程池
+     */
+    public Promise<T> on(String executorName) {
+        return on(PromiseExecutor.getExecutor(executorName));
+    }
+
+    /**
+     * 设置优先级，需要在启动之前设置
+     * 只在队列类型为priority的线程池中生效，优先级高的任务先执行，等待中的任务会随时间逐步提升优先级
+     *
+     * @param priority 优先级，越大越先执行，默认为0
+     * @return Promise
+     */
+    public Promise<T> priority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * 设置重试策略，需要在启动之前设置
+     * 任务抛出异常时先按策略重试，每次重试在定时器到期后重新提交到线程池，退避期间不占用线程；
+     * 重试次数用完、异常不可重试或超过总时长后，才进入异常处理。用户主动reject不会重试
+     *
+     * @param retryPolicy 重试策略，为null时不重试
+     * @return Promise
+     */
+    public Promise<T> retry(RetryPolicy retryPolicy) {
+        callbacks().retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * 设置限流器，需要在启动之前设置
+     * 每次执行（包括重试）之前先从限流器获取一个许可，许可不足时由定时器等待，到期后再提交到线程池，等待期间不占用线程
+     *
+     * @param rateLimiter 限流器，可以被多个Promise共享，为null时不限流
+     * @return Promise
+     */
+    public Promise<T> limit(RateLimiter rateLimiter) {
+        callbacks().rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * 获取优先级
+     *
+     * @return 优先级
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * 开始执行
+     */
+    public void startAsync() {
+        tryStartAsync();
+    }
+
+    /**
+     * 开始执行
+     *
+     * @return 是否由本次调用启动，已经启动过时返回false
+     */
+    boolean tryStartAsync() {
+        return startAsync(executor != null ? executor : defaultExecutor());
+    }
+
+    /**
+     * 获取默认的Promise线程池，启动时才获取，这样线程池可以在Promise类加载之后再初始化或替换
+     *
+     * @return 线程池，没有初始化时为null
+     */
+    private static Executor defaultExecutor() {
+        try {
+            return PromiseExecutor.getPromiseExecutor();
+        } catch (RejectedExecutionException e) {
+            // 线程池已经关闭，不能退回到当前线程执行
+            throw e;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 在指定线程池中开始执行
+     *
+     * @param executor 线程池
+     * @return 是否由本次调用启动，已经启动过时返回false
+     */
+    boolean startAsync(Executor executor) {
+        // 只有一个线程能把状态从NEW切换到RUNNING，保证不会重复提交
+        if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+            log.debug("尝试start重复启动一个Promise！");
+            return false;
+        }
+        if (task == null) {
+            startSource();
+            return true;
+        }
+        this.queuedExecutor = executor;
+        if (awaitPermit()) {
+            return true;
+        }
+        if (executor == null) {
+            log.error("Promise线程池未设置，使用当前线程执行任务，请检查线程池配置！");
+            runTask(0);
+            return true;
+        }
+        submit(executor);
+        return true;
+    }
+
+    /**
+     * 提交到线程池执行
+     *
+     * @param executor 线程池
+     */
+    private void submit(Executor executor) {
+        ExecutorTask promiseTaskLine = getExecutorTask();
+        this.queuedExecutor = executor;
+        this.queuedTask = promiseTaskLine;
+        if (traced || monitor != null) {
+            long now = System.nanoTime();
+            promiseTaskLine.queuedAt = now;
+            if (submittedAt == 0) {
+                this.submittedAt = now;
+            }
+        }
+        try {
+            executor.execute(promiseTaskLine);
+        } catch (RuntimeException e) {
+            // 提交失败时也要完成Promise，避免等待线程永远挂起
+            settle(null, PromiseStatus.REJECTED, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 设置了限流器时预定一个许可，需要等待时挂到定时器上，到期后继续执行
+     *
+     * @return 是否需要等待
+     */
+    private boolean awaitPermit() {
+        RateLimiter limiter = callbacks == null ? null : callbacks.rateLimiter;
+        if (limiter == null) {
+            return false;
+        }
+        long wait = limiter.reserve(1);
+        if (wait <= 0) {
+            return false;
+        }
+        // 等待期间被取消时不取消定时器，到期后什么也不做
+        PromiseTimer.park(new Resume(), queuedExecutor, wait, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * 定时器到期后继续执行
+     * 当前在定时器的派发线程中，把任务重新提交到原来的线程池，没有线程池时才在当前线程执行
+     */
+    private void resume() {
+        if (state != RUNNING) {
+            return;
+        }
+        Executor target = queuedExecutor;
+        try {
+            if (target == null) {
+                target = defaultExecutor();
+            }
+            if (target == null) {
+                runTask(0);
+                return;
+            }
+            submit(target);
+        } catch (RuntimeException e) {
+            log.error(e.getMessage());
+            settle(null, PromiseStatus.REJECTED, e);
+        }
+    }
+
+    /**
+     * 获取执行任务
+     *
+     * @return 任务
+     */
+    private ExecutorTask getExecutorTask() {
+        return new ExecutorTask();
+    }
+
+    /**
+     * 提交到线程池的任务，携带Promise的优先级
+     * 同时是Promise的Future视图，线程池关闭时取消排队中的Future（如ThreadPoolTaskExecutor、ConcurrencyLimitedExecutor）会一并取消Promise，
+     * 等待这个Promise的线程不会永远挂起
+     */
+    private class ExecutorTask implements Runnable, Future<T>, PrioritizedTask {
+        /**
+         * 提交到线程池的时间，只在设置了监控或被采样时记录
+         */
+        private long queuedAt;
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+
+        @Override
+        public void run() {
+            runTask(queuedAt);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return Promise.this.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return Promise.this.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return Promise.this.isDone();
+        }
+
+        @Override
+        public T get() throws ExecutionException {
+            waitForFinish();
+            return report();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws ExecutionException, TimeoutException {
+            try {
+                waitForFinish(true, unit.toNanos(timeout));
+            } catch (PromiseTimeoutException e) {
+                throw new TimeoutException(e.getMessage());
+            }
+            return report();
+        }
+
+        private T report() throws ExecutionException {
+            if (state == CANCELED) {
+                throw new CancellationException();
+            }
+            if (state == REJECTED && cause != null) {
+                throw new ExecutionException(cause);
+            }
+            return getResult();
+        }
+
+        @Override
+        public String toString() {
+            return "Promise@" + Integer.toHexString(System.identityHashCode(Promise.this)) + "[" + task + "]";
+        }
+    }
+
+    /**
+     * 等待限流许可的定时任务
+     * 继承ExecutorTask，定时器无法把它交给派发线程池或线程池关闭时同样会取消Promise
+     */
+    private final class Resume extends ExecutorTask {
+        @Override
+        public void run() {
+            resume();
+        }
+    }
+
+    /**
+     * 重试状态，到期后把任务重新提交到原来的线程池
+     * 继承ExecutorTask，定时器无法把它交给派发线程池或线程池关闭时同样会取消Promise
+     */
+    private final class Retry extends ExecutorTask {
+        private final RetryPolicy policy;
+        private final long firstStartedAt = System.nanoTime();
+        private int attempts;
+        private volatile TimerHandle timer;
+
+        private Retry(RetryPolicy policy) {
+            this.policy = policy;
+        }
+
+        /**
+         * 任务抛出异常后安排下一次执行
+         *
+         * @param e 本次执行抛出的异常
+         * @return 是否安排了重试，为false时应当拒绝Promise
+         */
+        private boolean schedule(Exception e) {
+            if (state != RUNNING) {
+                return false;
+            }
+            long delay = policy.nextDelayNanos(++attempts, e, System.nanoTime() - firstStartedAt);
+            if (delay < 0) {
+                return false;
+            }
+            log.debug("Promise任务第{}次执行失败，{}ms后重试：{}", attempts, TimeUnit.NANOSECONDS.toMillis(delay), e.getMessage());
+            timer = PromiseTimer.park(this, queuedExecutor, delay, TimeUnit.NANOSECONDS);
+            // 安排重试期间被取消时，取消线程可能还没看到timer
+            if (state != RUNNING) {
+                cancelTimer();
+            }
+            return true;
+        }
+
+        private void cancelTimer() {
+            TimerHandle t = timer;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+
+        /**
+         * 退避时间到期，设置了限流器时还要再等到许可
+         */
+        @Override
+        public void run() {
+            timer = null;
+            if (state != RUNNING || awaitPermit()) {
+                return;
+            }
+            resume();
+        }
+    }
+
+    /**
+     * 在当前线程执行任务并完成Promise
+     *
+     * @param queuedAt 提交到线程池的时间，没有经过线程池或没有记录时为0
+     */
+    @SuppressWarnings("unchecked")
+    private void runTask(long queuedAt) {
+        Thread current = Thread.currentThread();
+        this.queuedTask = null;
+        this.runner = current;
+        // 排队期间已经被取消的任务直接跳过
+        if (state != RUNNING) {
+            releaseRunner(current);
+            return;
+        }
+        boolean timed = traced || monitor != null;
+        long startedAt = 0;
+        if (timed) {
+            startedAt = System.nanoTime();
+            if (queuedAt != 0) {
+                queueNanos += startedAt - queuedAt;
+            }
+        }
+        Callbacks<T> c = callbacks;
+        if (c != null && c.retryPolicy != null && c.retry == null) {
+            c.retry = new Retry(c.retryPolicy);
+        }
+        T value;
+        PromiseStatus next = PromiseStatus.FULFILLED;
+        try {
+            // 只有PromisedTask用得到NextStatus，其他任务不创建
+            if (taskKind == PROMISED_TASK) {
+                NextStatus status = new NextStatus(this);
+                value = ((PromisedTask<T>) task).execute(status);
+                next = status.status;
+            } else if (taskKind == CALLABLE_TASK) {
+                value = ((Callable<T>) task).call();
+            } else {
+                ((Runnable) task).run();
+                value = null;
+            }
+        } catch (Exception e) {
+            releaseRunner(current);
+            long endedAt = timed ? endAttempt(startedAt) : 0;
+            if (c == null || c.retry == null || !c.retry.schedule(e)) {
+                settle(null, PromiseStatus.REJECTED, e, endedAt);
+            }
+            return;
+        } catch (Error e) {
+            releaseRunner(current);
+            settle(null, PromiseStatus.REJECTED, new RuntimeException(e), timed ? endAttempt(startedAt) : 0);
+            throw e;
+        }
+        releaseRunner(current);
+        settle(value, next, null, timed ? endAttempt(startedAt) : 0);
+    }
+
+    /**
+     * 一次执行结束，累加执行时间
+     *
+     * @param startedAt 本次执行开始的时间
+     * @return 本次执行结束的时间
+     */
+    private long endAttempt(long startedAt) {
+        long endedAt = System.nanoTime();
+        executeNanos += endedAt - startedAt;
+        return endedAt;
+    }
+
+    /**
+     * 任务执行结束后释放runner
+     * 如果取消线程已经拿走runner准备中断，等待中断完成后清除中断标记，避免影响该线程执行的下一个任务
+     *
+     * @param current 当前线程
+     */
+    private void releaseRunner(Thread current) {
+        if (RUNNER.compareAndSet(this, current, null)) {
+            return;
+        }
+        while (runner == INTERRUPTING) {
+            Thread.onSpinWait();
+        }
+        Thread.interrupted();
+    }
+
+    /**
+     * 取消Promise
+     * 还在线程池队列中的任务会被移除，不再执行；正在执行的任务在mayInterruptIfRunning为true时会被中断，
+     * 任务也可以通过status.isCancelled()配合取消。取消后只执行最终回调，等待者立即被唤醒
+     *
+     * @param mayInterruptIfRunning 是否中断正在执行任务的线程
+     * @return 是否由本次调用取消，已经完成的Promise返回false
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        int s;
+        do {
+            s = state;
+            if (s >= COMPLETING) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, COMPLETING));
+        if (s == RUNNING) {
+            Runnable task = queuedTask;
+            if (task != null && runner == null) {
+                PromiseExecutor.removeQueuedTask(queuedExecutor, task);
+            }
+            if (mayInterruptIfRunning) {
+                interruptRunner();
+            }
+            Callbacks<T> c = callbacks;
+            if (c != null && c.retry != null) {
+                c.retry.cancelTimer();
+            }
+        }
+        this.queuedTask = null;
+        try {
+            handleFinally();
+        } finally {
+            STATE.setVolatile(this, CANCELED);
+            postComplete();
+        }
+        return true;
+    }
+
+    /**
+     * 中断正在执行任务的线程
+     */
+    private void interruptRunner() {
+        Thread t = (Thread) RUNNER.getAndSet(this, INTERRUPTING);
+        try {
+            if (t != null) {
+                t.interrupt();
+            }
+        } finally {
+            runner = null;
         }
+    }
 
-        /**
-         * 取消
-         * 下一步直接进入最终回调
-         */
-        public void terminated() {
-            this.status = PromiseStatus.CANCELED;
+    /**
+     * 是否已被取消
+     *
+     * @return 是否已被取消
+     */
+    public boolean isCancelled() {
+        return state == CANCELED;
+    }
+
+    /**
+     * 同步执行
+     */
+    public T startSync() {
+        if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+            log.warn("尝试start重复启动一个Promise！将等待异步完成...");
+            return await();
+        }
+        if (task == null) {
+            startSource();
+            return waitForResult();
+        }
+        // 许可不足时不阻塞在限流器上，和异步启动一样等定时器到期后在线程池中执行
+        if (awaitPermit()) {
+            return waitForResult();
         }
+        runTask(0);
+        // 设置了重试时任务可能还在等待重试
+        return waitForResult();
     }
 
     /**
-     * 构造函数
-     *
-     * @param promisedTask 任务
+     * 启动派生Promise的上游
      */
-    private Promise(PromisedTask<T> promisedTask) {
-        // init
-        this.nextStatus = new NextStatus();
-        this.promisedTask = promisedTask;
-        this.countDownLatch = new CountDownLatch(1);
-        this.status = PromiseStatus.PENDING;
-        this.started = false;
+    private void startSource() {
+        if (source == null) {
+            return;
+        }
+        try {
+            source.accept(this);
+        } catch (RuntimeException e) {
+            completeExceptionally(e);
+            throw e;
+        }
     }
 
     /**
-     * 创建一个Promise
+     * 完成Promise：执行对应回调，发布最终状态，然后唤醒等待者
      *
-     * @param consumer 任务
-     * @param <T>      泛型
-     * @return Promise
+     * @param value 任务结果
+     * @param next  任务给出的下一步状态
+     * @param cause 任务抛出的异常，为null表示正常结束
+     * @return 是否由当前调用完成了Promise
      */
-    public static <T> Promise<T> resolve(PromisedTask<T> consumer) {
-        return new Promise<>(consumer);
+    private boolean settle(T value, PromiseStatus next, Exception cause) {
+        return settle(value, next, cause, 0);
     }
 
     /**
-     * 创建一个Promise
+     * 完成Promise，由执行任务的线程调用时把各阶段耗时交给监控和采样
+     * 其他线程（complete、超时、取消等）完成时不上报，它们读不到执行线程记录的时间
      *
-     * @param consumer 任务
-     * @param <T>      泛型
-     * @return Promise
+     * @param value     任务结果
+     * @param next      任务给出的下一步状态
+     * @param cause     任务抛出的异常，为null表示正常结束
+     * @param settledAt 最后一次执行结束的时间，为0时不上报
+     * @return 是否由当前调用完成了Promise
      */
-    public static <T> Promise<T> resolve(Callable<T> consumer) {
-        return new Promise<>((status) -> consumer.call());
+    private boolean settle(T value, PromiseStatus next, Exception cause, long settledAt) {
+        int s;
+        do {
+            s = state;
+            if (s >= COMPLETING) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, s, COMPLETING));
+        long callbacksDoneAt;
+        int finalState;
+        try {
+            if (cause != null) {
+                finalState = REJECTED;
+                this.cause = cause;
+                this.result = handleException(cause);
+                // 如果发生异常，就不需要执行错误回调了，因为object一定是null
+            } else {
+                this.result = value;
+                switch (next) {
+                    case CANCELED -> finalState = CANCELED;
+                    case REJECTED -> {
+                        finalState = REJECTED;
+                        this.cause = new RuntimeException("Promise rejected by user");
+                        handleError(this.cause);
+                    }
+                    default -> {
+                        finalState = FULFILLED;
+                        handleSuccess();
+                    }
+                }
+            }
+        } finally {
+            callbacksDoneAt = traced ? System.nanoTime() : 0;
+            handleFinally();
+        }
+        long finallyDoneAt = traced ? System.nanoTime() : 0;
+        STATE.setVolatile(this, finalState);
+        postComplete();
+        if (settledAt != 0) {
+            report(settledAt);
+            if (traced) {
+                PromiseTracer.record(task.getClass(), Thread.currentThread().getName(), getStatus(),
+                        submittedAt != 0 ? submittedAt - createdAt : -1, submittedAt != 0 ? queueNanos : -1, executeNanos,
+                        settledAt, callbacksDoneAt, finallyDoneAt, System.nanoTime());
+            }
+        }
+        return true;
     }
 
     /**
-     * 创建一个Promise
+     * 把各阶段耗时交给监控，排队和执行时间都是所有执行（包括重试）之和
      *
-     * @param consumer 任务
-     * @return Promise
+     * @param settledAt 最后一次执行结束的时间
      */
-    public static Promise<?> resolve(Runnable consumer) {
-        return new Promise<>((status) -> {
-            consumer.run();
-            return null;
-        });
+    private void report(long settledAt) {
+        PromiseMonitor m = monitor;
+        if (m == null) {
+            return;
+        }
+        try {
+            m.onComplete(getStatus(), submittedAt != 0 ? queueNanos : -1, executeNanos, System.nanoTime() - settledAt);
+        } catch (RuntimeException e) {
+            log.error(e.getMessage());
+        }
     }
 
     /**
-     * 成功回调
+     * 设置生命周期监控，传入null关闭监控
+     * 关闭时Promise只多一次volatile读，不记录任何时间
      *
-     * @param consumer 回调
-     * @return Promise
+     * @param promiseMonitor 监控
      */
-    public Promise<T> onSucceed(Consumer<T> consumer) {
-        this.success = consumer;
-        return this;
+    public static void setMonitor(PromiseMonitor promiseMonitor) {
+        monitor = promiseMonitor;
     }
 
     /**
-     * 失败回调
+     * 获取生命周期监控
      *
-     * @param consumer 回调
-     * @return Promise
+     * @return 监控，没有设置时为null
      */
-    public Promise<T> onFail(Consumer<T> consumer) {
-        this.fail = consumer;
-        return this;
+    public static PromiseMonitor getMonitor() {
+        return monitor;
     }
 
     /**
-     * 最终回调
+     * 以指定结果完成Promise，进入成功回调
      *
-     * @param consumer 回调
+     * @param value 结果
+     * @return 是否由本次调用完成
      */
-    public Promise<T> onFinally(Consumer<T> consumer) {
-        this.finallyCall = consumer;
-        return this;
+    boolean complete(T value) {
+        return settle(value, PromiseStatus.FULFILLED, null);
     }
 
     /**
-     * 异常处理
+     * 以指定异常拒绝Promise，进入异常处理
      *
-     * @param exceptionExceptionHandleTask 回调
-     * @return Promise
+     * @param e 异常
+     * @return 是否由本次调用完成
      */
-    public Promise<T> onException(ExceptionHandleTask<T> exceptionExceptionHandleTask) {
-        this.handleException = exceptionExceptionHandleTask;
-        return this;
+    boolean completeExceptionally(Exception e) {
+        return settle(null, PromiseStatus.REJECTED, e);
     }
 
     /**
-     * 开始执行
+     * 把上游的失败（拒绝或取消）传递给当前Promise
+     *
+     * @param upstream 已完成的上游Promise
+     * @return 上游是否失败
      */
-    public void startAsync() {
-        if (started) {
-            log.debug("尝试start重复启动一个Promise！");
-            return;
+    boolean propagateFailure(Promise<?> upstream) {
+        int s = upstream.state;
+        if (s == REJECTED) {
+            completeExceptionally(upstream.cause);
+            return true;
         }
-        Runnable promiseTaskLine = getExecutorTask();
-        this.started = true;
-        if (PROMISE_EXECUTOR == null) {
-            log.error("Promise线程池未设置，使用当前线程执行任务，请检查线程池配置！");
-            promiseTaskLine.run();
-            return;
+        if (s == CANCELED) {
+            settle(null, PromiseStatus.CANCELED, null);
+            return true;
         }
-        // 使用线程池执行任务
-        PROMISE_EXECUTOR.execute(promiseTaskLine);
+        return false;
     }
 
     /**
-     * 获取执行任务
-     *
-     * @return 任务
+     * 弹出完成栈，先执行完成回调，再唤醒等待线程
+     * 这样await返回时，所有完成回调都已经执行完毕
      */
-    private Runnable getExecutorTask() {
-        return () -> {
-            try {
-                this.result = promisedTask.execute(nextStatus);
-                this.status = this.nextStatus.status;
-                switch (this.status) {
-                    case CANCELED -> {
-                    }
-                    case FULFILLED -> handleSuccess();
-                    case REJECTED -> handleError(new RuntimeException("Promise rejected by user"));
-                    default -> handleSuccess();
-                }
-            } catch (Exception e) {
-                this.result = handleException(e);
-                // 如果发生异常，就不需要执行错误回调了，因为object一定是null
-//                handleError(e);
-            } finally {
-                handleFinally();
-                countDownLatch.countDown();
+    private void postComplete() {
+        Completion head = (Completion) COMPLETIONS.getAndSet(this, DONE);
+        // 栈是后进先出的，翻转后按注册顺序执行
+        Completion reversed = null;
+        while (head != null) {
+            Completion next = head.next;
+            head.next = reversed;
+            reversed = head;
+            head = next;
+        }
+        for (Completion c = reversed; c != null; c = c.next) {
+            if (!(c instanceof Waiter)) {
+                c.fire();
             }
-//            handleFinally();
-//            countDownLatch.countDown();
-        };
+        }
+        for (Completion c = reversed; c != null; c = c.next) {
+            if (c instanceof Waiter) {
+                c.fire();
+            }
+        }
     }
 
     /**
-     * 同步执行
+     * 压入完成栈
+     *
+     * @param c 节点
+     * @return 是否压入成功，Promise已完成时返回false
      */
-    public T startSync() {
-        if (started) {
-            log.warn("尝试start重复启动一个Promise！将等待异步完成...");
-            return await();
+    private boolean pushCompletion(Completion c) {
+        Completion h;
+        while ((h = completions) != DONE) {
+            // 顺便弹出栈顶已超时放弃的等待者，避免反复超时等待时节点堆积
+            if (h instanceof Waiter w && w.thread == null) {
+                COMPLETIONS.compareAndSet(this, h, h.next);
+                continue;
+            }
+            c.next = h;
+            if (COMPLETIONS.compareAndSet(this, h, c)) {
+                return true;
+            }
         }
-        this.started = true;
-        getExecutorTask().run();
-        return getResult();
+        c.next = null;
+        return false;
     }
 
     /**
@@ -271,6 +1181,7 @@ public class Promise<T> {
      */
     private T handleException(Exception e) {
         T execute = null;
+        ExceptionHandleTask<T> handleException = callbacks == null ? null : callbacks.handleException;
         if (handleException == null) {
             log.error("Promise error Not captured：{}", e.getMessage());
             return execute;
@@ -287,6 +1198,7 @@ public class Promise<T> {
      * 处理最终回调
      */
     private void handleFinally() {
+        Consumer<T> finallyCall = callbacks == null ? null : callbacks.finallyCall;
         if (finallyCall == null) {
             return;
         }
@@ -304,7 +1216,7 @@ public class Promise<T> {
      */
     private void handleError(Exception e) {
         log.error(e.getMessage());
-        this.status = PromiseStatus.REJECTED;
+        Consumer<T> fail = callbacks == null ? null : callbacks.fail;
         if (fail == null) {
             return;
         }
@@ -319,6 +1231,7 @@ public class Promise<T> {
      * 处理成功
      */
     private void handleSuccess() {
+        Consumer<T> success = callbacks == null ? null : callbacks.success;
         if (success == null) {
             return;
         }
@@ -332,10 +1245,11 @@ public class Promise<T> {
     /**
      * 获取结果
      *
-     * @return 结果
+     * @return 结果，还没有完成时为null
      */
     public T getResult() {
-        return result;
+        // 结果在最终状态的volatile写之前写入，读到最终状态后结果才可见；执行中和回调中读到的是未发布的值
+        return state > COMPLETING ? result : null;
     }
 
     /**
@@ -344,7 +1258,7 @@ public class Promise<T> {
      * @return 结果
      */
     public T await() {
-        if (!started) {
+        if (state == NEW) {
             startAsync();
         }
         // 等待线程池执行完毕
@@ -352,11 +1266,40 @@ public class Promise<T> {
         return getResult();
     }
 
+    /**
+     * 限时等待结果，未启动时会先启动
+     *
+     * @param timeout 最长等待时间
+     * @return 结果
+     * @throws PromiseTimeoutException     超时仍未完成
+     * @throws PromiseInterruptedException 等待时线程被中断
+     */
+    public T await(Duration timeout) {
+        if (state == NEW) {
+            startAsync();
+        }
+        waitForFinish(true, timeout.toNanos());
+        return getResult();
+    }
+
+    /**
+     * 限时等待结果，不会启动Promise
+     *
+     * @param timeout 最长等待时间
+     * @return 结果
+     * @throws PromiseTimeoutException     超时仍未完成
+     * @throws PromiseInterruptedException 等待时线程被中断
+     */
+    public T waitForResult(Duration timeout) {
+        waitForFinish(true, timeout.toNanos());
+        return getResult();
+    }
+
     /**
      * 等待执行完毕
      */
     public void waitFinish() {
-        if (!started) {
+        if (state == NEW) {
             startAsync();
         }
         // 等待线程池执行完毕
@@ -365,12 +1308,69 @@ public class Promise<T> {
 
     /**
      * 等待执行完毕
+     * 结果已就绪时直接返回，否则短暂自旋后挂起当前线程，直到完成时被唤醒
      */
     private void waitForFinish() {
-        try {
-            countDownLatch.await();
-        } catch (InterruptedException e) {
-            log.error(e.getMessage());
+        waitForFinish(false, 0L);
+    }
+
+    /**
+     * 等待执行完毕
+     * 结果已就绪时直接返回，否则短暂自旋后挂起当前线程，直到完成时被唤醒
+     *
+     * @param timed 是否限时
+     * @param nanos 限时时长，单位纳秒
+     * @throws PromiseTimeoutException     超时
+     * @throws PromiseInterruptedException 等待时线程被中断，抛出前会恢复中断标记
+     */
+    private void waitForFinish(boolean timed, long nanos) {
+        for (int i = 0; i < SPINS; i++) {
+            if (isDone()) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Waiter waiter = null;
+        while (!isDone()) {
+            if (Thread.interrupted()) {
+                abandon(waiter);
+                Thread.currentThread().interrupt();
+                throw new PromiseInterruptedException(new InterruptedException());
+            }
+            if (waiter == null) {
+                waiter = new Waiter();
+                if (!pushCompletion(waiter)) {
+                    return;
+                }
+                continue;
+            }
+            if (!timed) {
+                LockSupport.park(this);
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                abandon(waiter);
+                throw new PromiseTimeoutException("Promise did not complete within " + Duration.ofNanos(nanos));
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * 放弃等待，节点会在之后的入栈或完成时被清理
+     *
+     * @param waiter 等待者
+     */
+    private void abandon(Waiter waiter) {
+        if (waiter == null) {
+            return;
+        }
+        waiter.thread = null;
+        Completion h;
+        while ((h = completions) instanceof Waiter w && w.thread == null) {
+            COMPLETIONS.compareAndSet(this, h, h.next);
         }
     }
 
@@ -383,13 +1383,28 @@ public class Promise<T> {
         return getResult();
     }
 
+    /**
+     * 获取拒绝原因
+     *
+     * @return 任务抛出的异常，用户拒绝时为"Promise rejected by user"异常，未拒绝时为null
+     */
+    public Exception getCause() {
+        return state > COMPLETING ? cause : null;
+    }
+
     /**
      * 获取状态
      *
      * @return 状态
      */
     public PromiseStatus getStatus() {
-        return status;
+        return switch (state) {
+            case NEW -> PromiseStatus.PENDING;
+            case FULFILLED -> PromiseStatus.FULFILLED;
+            case REJECTED -> PromiseStatus.REJECTED;
+            case CANCELED -> PromiseStatus.CANCELED;
+            default -> PromiseStatus.RUNNING;
+        };
     }
 
     /**
@@ -398,11 +1413,15 @@ public class Promise<T> {
      * @return Promise
      */
     public Promise<T> reBuild() {
-        if (!started) {
+        if (state == NEW) {
             log.debug("try to reBuild a promise that has not started!");
             return this;
         }
-        return new Promise<>(promisedTask).onSucceed(success).onFail(fail).onFinally(finallyCall).onException(handleException);
+        if (task == null) {
+            log.warn("try to reBuild a derived promise, it has no task to run again!");
+            return this;
+        }
+        return copySettingsTo(new Promise<>(task, taskKind, null));
     }
 
     /**
@@ -412,7 +1431,18 @@ public class Promise<T> {
      * @return Promise
      */
     public Promise<T> changeTask(PromisedTask<T> task) {
-        return new Promise<>(task).onSucceed(success).onFail(fail).onFinally(finallyCall).onException(handleException);
+        return copySettingsTo(new Promise<>(task, PROMISED_TASK, null));
+    }
+
+    /**
+     * 把回调、线程池和优先级复制到新的Promise
+     *
+     * @param promise 新的Promise
+     * @return 新的Promise
+     */
+    private Promise<T> copySettingsTo(Promise<T> promise) {
+        promise.callbacks = callbacks == null ? null : callbacks.copy();
+        return promise.on(executor).priority(priority);
     }
 
     /**
@@ -421,7 +1451,7 @@ public class Promise<T> {
      * @return 是否已经开始
      */
     public boolean isStarted() {
-        return started;
+        return state != NEW;
     }
 
     /**
@@ -430,24 +1460,223 @@ public class Promise<T> {
      * @return 是否已经完成
      */
     public boolean isDone() {
-        return countDownLatch.getCount() == 0;
+        return state > COMPLETING;
+    }
+
+    /**
+     * 上游成功后，用结果继续执行下一步
+     * 下一步在上游完成的线程中执行，不会额外占用线程，应当是轻量的操作；上游失败或取消时直接传递给返回的Promise
+     *
+     * @param fn  下一步
+     * @param <R> 下一步结果类型
+     * @return 新的Promise，启动它时会启动当前Promise
+     */
+    public <R> Promise<R> then(CallBackTask<T, R> fn) {
+        Promise<R> next = deferred((self) -> startIfNew());
+        addFinishCallBack(() -> {
+            if (next.propagateFailure(this)) {
+                return;
+            }
+            try {
+                next.complete(fn.execute(result));
+            } catch (Exception e) {
+                next.completeExceptionally(e);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 上游成功后，用结果创建并启动另一个Promise，返回的Promise随它完成
+     * 两次异步调用之间不会有线程阻塞等待
+     *
+     * @param fn  创建下一个Promise
+     * @param <R> 下一步结果类型
+     * @return 新的Promise，启动它时会启动当前Promise
+     */
+    public <R> Promise<R> thenCompose(CallBackTask<T, Promise<R>> fn) {
+        Promise<R> next = deferred((self) -> startIfNew());
+        addFinishCallBack(() -> {
+            if (next.propagateFailure(this)) {
+                return;
+            }
+            Promise<R> inner;
+            try {
+                inner = fn.execute(result);
+            } catch (Exception e) {
+                next.completeExceptionally(e);
+                return;
+            }
+            if (inner == null) {
+                next.complete(null);
+                return;
+            }
+            inner.addFinishCallBack(() -> {
+                if (!next.propagateFailure(inner)) {
+                    next.complete(inner.result);
+                }
+            });
+            inner.startIfNew();
+        });
+        return next;
+    }
+
+    /**
+     * 当前Promise和另一个Promise都成功后，合并两者的结果
+     * 任意一个失败或取消时，返回的Promise立即随之失败
+     *
+     * @param other 另一个Promise
+     * @param fn    合并函数
+     * @param <U>   另一个Promise的结果类型
+     * @param <R>   合并结果类型
+     * @return 新的Promise，启动它时会同时启动两个Promise
+     */
+    public <U, R> Promise<R> thenCombine(Promise<U> other, BiFunction<T, U, R> fn) {
+        Promise<R> next = deferred((self) -> {
+            startIfNew();
+            other.startIfNew();
+        });
+        AtomicInteger remaining = new AtomicInteger(2);
+        Runnable onEach = () -> {
+            if (next.propagateFailure(this) || next.propagateFailure(other)) {
+                return;
+            }
+            if (remaining.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                next.complete(fn.apply(result, other.result));
+            } catch (Exception e) {
+                next.completeExceptionally(e);
+            }
+        };
+        addFinishCallBack(onEach);
+        other.addFinishCallBack(onEach);
+        return next;
+    }
+
+    /**
+     * 上游被拒绝时，用异常计算一个替代结果；上游成功时原样传递结果
+     *
+     * @param fn 异常处理
+     * @return 新的Promise，启动它时会启动当前Promise
+     */
+    public Promise<T> exceptionally(ExceptionHandleTask<T> fn) {
+        Promise<T> next = deferred((self) -> startIfNew());
+        addFinishCallBack(() -> {
+            switch (state) {
+                case FULFILLED -> next.complete(result);
+                case REJECTED -> {
+                    try {
+                        next.complete(fn.execute(cause));
+                    } catch (Exception e) {
+                        next.completeExceptionally(e);
+                    }
+                }
+                default -> next.settle(null, PromiseStatus.CANCELED, null);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 超时后以PromiseTimeoutException拒绝
+     * 从启动返回的Promise时开始计时，由共享定时器计时，不占用线程；超时不会中断当前Promise的任务
+     *
+     * @param timeout 超时时间
+     * @return 新的Promise，启动它时会启动当前Promise
+     */
+    public Promise<T> orTimeout(Duration timeout) {
+        return withTimeout(timeout, (next) -> next.completeExceptionally(
+                new PromiseTimeoutException("Promise did not complete within " + timeout)));
+    }
+
+    /**
+     * 超时后以指定值完成
+     * 从启动返回的Promise时开始计时，由共享定时器计时，不占用线程；超时不会中断当前Promise的任务
+     *
+     * @param value   超时时使用的结果
+     * @param timeout 超时时间
+     * @return 新的Promise，启动它时会启动当前Promise
+     */
+    public Promise<T> completeOnTimeout(T value, Duration timeout) {
+        return withTimeout(timeout, (next) -> next.complete(value));
+    }
+
+    /**
+     * 创建带超时的派生Promise
+     *
+     * @param timeout   超时时间
+     * @param onTimeout 超时时对派生Promise执行的动作
+     * @return 派生Promise
+     */
+    private Promise<T> withTimeout(Duration timeout, Consumer<Promise<T>> onTimeout) {
+        TimeoutSource<T> timeoutSource = new TimeoutSource<>(this, timeout, onTimeout);
+        Promise<T> next = deferred(timeoutSource);
+        addFinishCallBack(() -> {
+            TimerHandle timer = timeoutSource.timer;
+            if (timer != null) {
+                timer.cancel();
+            }
+            if (!next.propagateFailure(this)) {
+                next.complete(result);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 带超时的派生Promise的启动动作：开始计时并启动上游
+     *
+     * @param <T> 泛型
+     */
+    private static final class TimeoutSource<T> implements Consumer<Promise<T>> {
+        private final Promise<T> upstream;
+        private final Duration timeout;
+        private final Consumer<Promise<T>> onTimeout;
+        private volatile TimerHandle timer;
+
+        private TimeoutSource(Promise<T> upstream, Duration timeout, Consumer<Promise<T>> onTimeout) {
+            this.upstream = upstream;
+            this.timeout = timeout;
+            this.onTimeout = onTimeout;
+        }
+
+        @Override
+        public void accept(Promise<T> next) {
+            timer = PromiseTimer.schedule(() -> onTimeout.accept(next), timeout.toNanos(), TimeUnit.NANOSECONDS, next);
+            upstream.startIfNew();
+        }
+    }
+
+    /**
+     * 如果还没有启动则启动，已启动时什么也不做
+     */
+    void startIfNew() {
+        if (state == NEW) {
+            startAsync();
+        }
     }
 
     /**
      * 添加完成回调
+     * 在最终回调之后执行，如果Promise已经完成则立即在当前线程执行
      */
     protected void addFinishCallBack(Runnable runnable) {
-        if (isDone()) {
-            throw new RuntimeException("Promise has already done, cannot add finish callback!");
+        if (!pushCompletion(new CallBack(runnable))) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * 添加完成节点，和addFinishCallBack一样，但由调用方直接继承Completion，省去包装Runnable的对象
+     * fire()需要自己处理异常
+     *
+     * @param completion 完成节点
+     */
+    void addCompletion(Completion completion) {
+        if (!pushCompletion(completion)) {
+            completion.fire();
         }
-        Consumer<T> finallyCalled = this.finallyCall;
-        this.finallyCall = (result) -> {
-            if (finallyCalled == null) {
-                runnable.run();
-            } else {
-                this.finallyCall.accept(result);
-                runnable.run();
-            }
-        };
     }
 }
@@ -0,0 +1,373 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.tasks.CallBackTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Promise缓存
+ * 同一个key并发获取时共享同一个正在加载的Promise（single-flight），加载成功后缓存这个已完成的Promise，
+ * 命中时直接返回，不占用线程也不分配新对象；加载失败或被取消时不缓存，下次获取重新加载。
+ * <p>
+ * 过期：expireAfterWrite到期后的获取视为未命中，重新加载；refreshAfterWrite到期后的获取先返回旧值，
+ * 同时在后台重新加载一次，加载成功后替换旧值。
+ * <p>
+ * 淘汰：超过maximumSize时用时钟指针依次取样若干条目，淘汰其中访问频率最低的，频率相同时淘汰加载较早的。
+ * 频率在命中时累加（最大15），指针扫过时减半，很久不访问的热点会逐渐冷却。
+ * 返回的Promise是所有调用方共享的，不要取消它或在上面设置回调，需要后续处理时使用then等派生方法
+ *
+ * @param <K> key类型
+ * @param <V> 值类型
+ * @author qcqcqc
+ */
+public class PromiseCache<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(PromiseCache.class);
+    /**
+     * 每次淘汰取样的条目数
+     */
+    private static final int SAMPLE_SIZE = 8;
+    /**
+     * 访问频率上限
+     */
+    private static final int MAX_FREQUENCY = 15;
+    private static final VarHandle REFRESHING;
+
+    static {
+        try {
+            REFRESHING = MethodHandles.lookup().findVarHandle(PromiseCache.Entry.class, "refreshing", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final CallBackTask<K, V> loader;
+    private final ConcurrentHashMap<K, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    /**
+     * 淘汰取样的时钟指针，只在持有evictionLock时访问
+     */
+    private Iterator<Map.Entry<K, Entry>> hand;
+
+    private long maximumSize;
+    private long expireAfterWriteNanos;
+    private long refreshAfterWriteNanos;
+    private Executor executor;
+
+    /**
+     * 创建缓存，默认不限大小、不过期
+     *
+     * @param loader 加载函数，在线程池中执行
+     */
+    public PromiseCache(CallBackTask<K, V> loader) {
+        if (loader == null) {
+            throw new IllegalArgumentException("loader must not be null");
+        }
+        this.loader = loader;
+    }
+
+    /**
+     * 设置最大条目数，需要在使用之前设置
+     *
+     * @param maximumSize 最大条目数，小于等于0时不限制
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> maximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * 设置写入后的过期时间，需要在使用之前设置
+     *
+     * @param duration 过期时间，为null或0时不过期
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> expireAfterWrite(Duration duration) {
+        this.expireAfterWriteNanos = duration == null ? 0 : duration.toNanos();
+        return this;
+    }
+
+    /**
+     * 设置写入后的刷新时间，需要在使用之前设置
+     * 到期后的获取仍然返回旧值，同时在后台重新加载，一般比expireAfterWrite短
+     *
+     * @param duration 刷新时间，为null或0时不刷新
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> refreshAfterWrite(Duration duration) {
+        this.refreshAfterWriteNanos = duration == null ? 0 : duration.toNanos();
+        return this;
+    }
+
+    /**
+     * 指定执行加载的线程池，需要在使用之前设置
+     *
+     * @param executor 线程池，为null时使用默认的Promise线程池
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> on(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 指定执行加载的线程池，需要在使用之前设置
+     *
+     * @param executorName promise.executors下配置的线程池名称
+     * @return PromiseCache
+     * @throws RuntimeException 没有这个名称的线程池
+     */
+    public PromiseCache<K, V> on(String executorName) {
+        return on(PromiseExecutor.getExecutor(executorName));
+    }
+
+    /**
+     * 获取值
+     * 命中时返回已完成的Promise；正在加载时返回同一个加载中的Promise；否则开始加载
+     *
+     * @param key key
+     * @return 共享的Promise，不要取消
+     */
+    public Promise<V> get(K key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.loaded) {
+                hits.increment();
+                return entry.promise;
+            }
+            long age = System.nanoTime() - entry.loadedAt;
+            if (expireAfterWriteNanos <= 0 || age < expireAfterWriteNanos) {
+                hits.increment();
+                entry.touch();
+                if (refreshAfterWriteNanos > 0 && age >= refreshAfterWriteNanos) {
+                    refresh(key, entry);
+                }
+                return entry.promise;
+            }
+        }
+        misses.increment();
+        entry = entries.compute(key, (k, old) -> old != null && !old.isExpired() ? old : new Entry(k, null));
+        entry.promise.startIfNew();
+        return entry.promise;
+    }
+
+    /**
+     * 获取已缓存的值，不会触发加载
+     *
+     * @param key key
+     * @return 值，没有缓存、正在加载或已过期时返回null
+     */
+    public V getIfPresent(K key) {
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.loaded || entry.isExpired()) {
+            return null;
+        }
+        entry.touch();
+        return entry.promise.getResult();
+    }
+
+    /**
+     * 移除缓存，正在进行的加载不受影响，但结果不会再被缓存
+     *
+     * @param key key
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 移除所有缓存
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * 获取条目数，包括正在加载的
+     *
+     * @return 条目数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取命中次数，共享正在加载的Promise也算命中
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 获取未命中次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 获取因为超过最大条目数而淘汰的条目数
+     *
+     * @return 淘汰数
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 后台重新加载，同一个条目同时只有一次刷新
+     *
+     * @param key     key
+     * @param current 当前条目
+     */
+    private void refresh(K key, Entry current) {
+        if (!REFRESHING.compareAndSet(current, false, true)) {
+            return;
+        }
+        new Entry(key, current).promise.startIfNew();
+    }
+
+    /**
+     * 超过最大条目数时淘汰，同时只有一个线程在淘汰，其他线程直接返回
+     */
+    private void evictIfNeeded() {
+        if (maximumSize <= 0 || entries.size() <= maximumSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (entries.size() > maximumSize) {
+                Map.Entry<K, Entry> victim = null;
+                int victimFrequency = 0;
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    Map.Entry<K, Entry> sample = nextSample();
+                    if (sample == null) {
+                        break;
+                    }
+                    Entry entry = sample.getValue();
+                    if (!entry.loaded) {
+                        // 正在加载的条目不淘汰
+                        continue;
+                    }
+                    int frequency = entry.frequency;
+                    if (victim == null || frequency < victimFrequency
+                            || (frequency == victimFrequency && entry.loadedAt - victim.getValue().loadedAt < 0)) {
+                        victim = sample;
+                        victimFrequency = frequency;
+                    }
+                    // 指针扫过的条目频率减半
+                    entry.frequency = frequency >> 1;
+                }
+                if (victim == null) {
+                    // 取样到的都在加载中，等它们加载完成时再淘汰
+                    return;
+                }
+                if (entries.remove(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 时钟指针前进一步，走到末尾时从头开始
+     *
+     * @return 条目，缓存为空时返回null
+     */
+    private Map.Entry<K, Entry> nextSample() {
+        if (hand == null || !hand.hasNext()) {
+            hand = entries.entrySet().iterator();
+            if (!hand.hasNext()) {
+                return null;
+            }
+        }
+        return hand.next();
+    }
+
+    /**
+     * 缓存条目，同时作为加载Promise的完成节点，加载完成时更新缓存
+     */
+    private final class Entry extends Promise.Completion {
+        private final K key;
+        private final Promise<V> promise;
+        /**
+         * 刷新时被替换的旧条目，首次加载时为null
+         * 加载完成后清空，否则热点key每次刷新都会通过它引用上一代条目，旧的Promise和值永远不会被回收
+         */
+        private Entry replacing;
+        /**
+         * 加载成功的时间，在loaded的volatile写之前写入
+         */
+        private long loadedAt;
+        private volatile boolean loaded;
+        private volatile boolean refreshing;
+        /**
+         * 访问频率，允许并发累加时丢失计数
+         */
+        private int frequency;
+
+        private Entry(K key, Entry replacing) {
+            this.key = key;
+            this.replacing = replacing;
+            this.promise = Promise.resolve(() -> loader.execute(key)).on(executor);
+            this.promise.addCompletion(this);
+        }
+
+        private void touch() {
+            int f = frequency;
+            // 达到上限后不再写，热点key不会反复写同一个缓存行
+            if (f < MAX_FREQUENCY) {
+                frequency = f + 1;
+            }
+        }
+
+        private boolean isExpired() {
+            return loaded && expireAfterWriteNanos > 0 && System.nanoTime() - loadedAt >= expireAfterWriteNanos;
+        }
+
+        @Override
+        void fire() {
+            Entry old = replacing;
+            replacing = null;
+            if (promise.getStatus() == PromiseStatus.FULFILLED) {
+                loadedAt = System.nanoTime();
+                if (old != null) {
+                    frequency = old.frequency;
+                }
+                loaded = true;
+                // 刷新期间被移除或覆盖时不再放回
+                if (old != null && !entries.replace(key, old, this)) {
+                    return;
+                }
+                evictIfNeeded();
+                return;
+            }
+            if (old == null) {
+                entries.remove(key, this);
+                return;
+            }
+            // 刷新失败时保留旧值，下次获取再尝试刷新
+            log.error("refresh of key {} failed: {}", key, promise.getCause() == null ? promise.getStatus() : promise.getCause().getMessage());
+            old.refreshing = false;
+        }
+    }
+}
@@ -2,25 +2,56 @@ package online.zust.qcqcqc.utils.threads;
 
 import online.zust.qcqcqc.utils.ThreadsUtils;
 import online.zust.qcqcqc.utils.config.ThreadsUtilsAutoInject;
+import online.zust.qcqcqc.utils.threads.executors.AdaptivePoolSizer;
+import online.zust.qcqcqc.utils.threads.executors.ConcurrencyLimitedExecutor;
+import online.zust.qcqcqc.utils.threads.executors.CountingRejectedExecutionHandler;
+import online.zust.qcqcqc.utils.threads.executors.PriorityTaskQueue;
+import online.zust.qcqcqc.utils.threads.executors.ResizableQueue;
+import online.zust.qcqcqc.utils.threads.executors.ResizableThreadPoolTaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.SmartApplicationListener;
+import org.springframework.core.env.Environment;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author qcqcqc
  */
 @Component
 @ConfigurationProperties(prefix = "promise.executor")
-public class PromiseExecutor implements DisposableBean {
+public class PromiseExecutor implements DisposableBean, SmartApplicationListener, SmartLifecycle {
+    /**
+     * Spring Cloud刷新配置后发布的事件，按类名匹配，不依赖spring-cloud-context
+     */
+    private static final String ENVIRONMENT_CHANGE_EVENT = "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
 
     @Value("${promise.executor.core-pool-size:16}")
     private Integer corePoolSize;
@@ -32,10 +63,96 @@ public class PromiseExecutor implements DisposableBean {
     private Integer keepAliveSeconds;
     @Value("${promise.executor.thread-name-prefix:promise}")
     private String threadNamePrefix;
+    /**
+     * 执行模式：platform使用平台线程池，virtual使用虚拟线程（JVM不支持时回退到平台线程池）
+     */
+    @Value("${promise.executor.mode:platform}")
+    private String mode;
+    /**
+     * 虚拟线程模式下的最大并发数，小于等于0表示不限制
+     */
+    @Value("${promise.executor.max-concurrency:0}")
+    private Integer maxConcurrency;
+    /**
+     * 队列类型：fifo按提交顺序执行，priority按Promise的优先级执行
+     */
+    @Value("${promise.executor.queue-type:fifo}")
+    private String queueType;
+    /**
+     * priority队列的老化时间，低优先级任务每等待这么久，优先级相当于提升1
+     */
+    @Value("${promise.executor.priority-aging-millis:100}")
+    private Long priorityAgingMillis;
+    /**
+     * 拒绝策略：caller-runs、abort、discard、discard-oldest，被丢弃的任务会被取消
+     */
+    @Value("${promise.executor.rejection-policy:caller-runs}")
+    private String rejectionPolicy;
+    /**
+     * 分治任务线程池的并行度，小于等于0时和核心线程数一致
+     */
+    @Value("${promise.executor.fork-join-parallelism:0}")
+    private Integer forkJoinParallelism;
+    /**
+     * 是否根据排队时间和服务时间自动调整核心线程数，只对平台线程池生效
+     */
+    @Value("${promise.executor.adaptive.enabled:false}")
+    private Boolean adaptiveEnabled;
+    @Value("${promise.executor.adaptive.min-pool-size:4}")
+    private Integer adaptiveMinPoolSize;
+    @Value("${promise.executor.adaptive.max-pool-size:256}")
+    private Integer adaptiveMaxPoolSize;
+    @Value("${promise.executor.adaptive.interval-millis:1000}")
+    private Long adaptiveIntervalMillis;
+
+    /**
+     * 关闭时等待任务完成的最长时间
+     */
+    @Value("${promise.executor.shutdown.timeout-millis:30000}")
+    private Long shutdownTimeoutMillis;
+    /**
+     * 关闭时所在的生命周期阶段，默认在Web服务器停止之后、数据源等Bean销毁之前
+     */
+    @Value("${promise.executor.shutdown.phase:" + DEFAULT_SHUTDOWN_PHASE + "}")
+    private Integer shutdownPhase;
+
+    private AdaptivePoolSizer adaptivePoolSizer;
+    /**
+     * 上次从配置中读取并应用的线程池配置，刷新时只调整配置有变化的线程池
+     */
+    private final Map<String, NamedExecutorProperties> appliedProperties = new ConcurrentHashMap<>();
+    /**
+     * 由当前Bean创建并注册的线程池，容器关闭时只排空这些，不影响同一个JVM中其他容器的线程池
+     */
+    private final Map<String, Executor> ownedExecutors = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile boolean drained;
+    private Environment environment;
 
     private static final Logger log = LoggerFactory.getLogger(PromiseExecutor.class);
+    /**
+     * 默认线程池的名称
+     */
+    public static final String DEFAULT_EXECUTOR_NAME = "default";
+    /**
+     * 关闭结果中分治任务线程池的名称
+     */
+    private static final String FORK_JOIN_EXECUTOR_NAME = "fork-join";
+    /**
+     * 默认的关闭阶段，比Spring Boot的Web服务器优雅关闭（DEFAULT_PHASE - 1024）更晚停止
+     */
+    public static final int DEFAULT_SHUTDOWN_PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
 
-    private static Executor promiseExecutor;
+    private static volatile Executor promiseExecutor;
+    /**
+     * shutdownGracefully之后为true，重新initExecutor之前获取默认线程池会直接失败
+     */
+    private static volatile boolean shutdown;
+    /**
+     * promise.executors下配置的相互隔离的线程池
+     */
+    private static final Map<String, Executor> NAMED_EXECUTORS = new ConcurrentHashMap<>();
+    private static volatile ForkJoinPool forkJoinPool;
 
     /**
      * 创建线程池
@@ -44,13 +161,346 @@ public class PromiseExecutor implements DisposableBean {
      */
     @Bean(name = "promiseExecutor")
     @ConditionalOnMissingBean(name = "promiseExecutor")
-    public Executor threadPoolTaskExecutor() {
+    public Executor threadPoolTaskExecutor(Environment environment) {
         log.info("start promiseExecutor");
-        Executor executor = ThreadsUtils.createExecutor(corePoolSize, maxPoolSize, queueCapacity, keepAliveSeconds, new ThreadPoolExecutor.CallerRunsPolicy(), threadNamePrefix);
+        this.environment = environment;
+        NamedExecutorProperties defaults = defaultProperties();
+        Executor executor = createExecutor(defaults, threadNamePrefix);
         initExecutor(executor);
+        ownedExecutors.put(DEFAULT_EXECUTOR_NAME, executor);
+        appliedProperties.put(DEFAULT_EXECUTOR_NAME, defaults);
+        Map<String, NamedExecutorProperties> named = Binder.get(environment)
+                .bind("promise.executors", Bindable.mapOf(String.class, NamedExecutorProperties.class))
+                .orElse(Collections.emptyMap());
+        named.forEach((name, properties) -> {
+            log.info("start promise executor: {}", name);
+            registerOwned(name, createExecutor(properties, properties.getThreadNamePrefix() != null ? properties.getThreadNamePrefix() : name));
+            appliedProperties.put(name, properties);
+        });
+        if (adaptiveEnabled) {
+            if (executor instanceof ThreadPoolTaskExecutor) {
+                adaptivePoolSizer = new AdaptivePoolSizer(executor, adaptiveMinPoolSize, adaptiveMaxPoolSize, adaptiveIntervalMillis);
+                adaptivePoolSizer.start();
+            } else {
+                log.warn("adaptive pool sizing only works with platform threads, ignored.");
+            }
+        }
+        int parallelism = forkJoinParallelism > 0 ? forkJoinParallelism : corePoolSize;
+        ForkJoinPool pool = ThreadsUtils.createForkJoinPool(parallelism, threadNamePrefix + "-fj");
+        initForkJoinPool(pool);
+        ownedExecutors.put(FORK_JOIN_EXECUTOR_NAME, pool);
         return executor;
     }
 
+    /**
+     * 注册由当前Bean创建的命名线程池
+     *
+     * @param name     名称
+     * @param executor 线程池
+     */
+    private void registerOwned(String name, Executor executor) {
+        registerExecutor(name, executor);
+        ownedExecutors.put(name, executor);
+    }
+
+    /**
+     * 默认线程池的配置
+     *
+     * @return 配置
+     */
+    private NamedExecutorProperties defaultProperties() {
+        NamedExecutorProperties properties = new NamedExecutorProperties();
+        properties.setCorePoolSize(corePoolSize);
+        properties.setMaxPoolSize(maxPoolSize);
+        properties.setQueueCapacity(queueCapacity);
+        properties.setKeepAliveSeconds(keepAliveSeconds);
+        properties.setMode(mode);
+        properties.setMaxConcurrency(maxConcurrency);
+        properties.setQueueType(queueType);
+        properties.setPriorityAgingMillis(priorityAgingMillis);
+        properties.setRejectionPolicy(rejectionPolicy);
+        return properties;
+    }
+
+    /**
+     * 按执行模式和队列类型创建线程池
+     *
+     * @param properties       线程池配置
+     * @param threadNamePrefix 线程名前缀
+     * @return 线程池
+     */
+    private static Executor createExecutor(NamedExecutorProperties properties, String threadNamePrefix) {
+        if ("virtual".equalsIgnoreCase(properties.getMode())) {
+            if (ThreadsUtils.isVirtualThreadSupported()) {
+                int maxConcurrency = properties.getMaxConcurrency();
+                log.info("{} use virtual threads, max concurrency: {}", threadNamePrefix, maxConcurrency > 0 ? maxConcurrency : "unlimited");
+                return ThreadsUtils.createVirtualExecutor(maxConcurrency, threadNamePrefix);
+            }
+            log.warn("virtual threads are not supported by this JVM, {} falls back to platform threads.", threadNamePrefix);
+        }
+        if ("priority".equalsIgnoreCase(properties.getQueueType())) {
+            return ThreadsUtils.createPriorityExecutor(properties.getCorePoolSize(), properties.getMaxPoolSize(), properties.getQueueCapacity(),
+                    properties.getKeepAliveSeconds(), properties.getPriorityAgingMillis(), rejectedHandler(properties, null), threadNamePrefix);
+        }
+        return ThreadsUtils.createExecutor(properties.getCorePoolSize(), properties.getMaxPoolSize(), properties.getQueueCapacity(),
+                properties.getKeepAliveSeconds(), rejectedHandler(properties, null), threadNamePrefix);
+    }
+
+    /**
+     * 按配置创建拒绝策略，每个线程池单独计数
+     *
+     * @param properties 线程池配置
+     * @param current    线程池当前的拒绝策略，是计数策略时沿用它的计数，为null时重新计数
+     * @return 拒绝策略
+     */
+    private static RejectedExecutionHandler rejectedHandler(NamedExecutorProperties properties, RejectedExecutionHandler current) {
+        String policy = properties.getRejectionPolicy();
+        RejectedExecutionHandler delegate;
+        if (policy == null || "caller-runs".equalsIgnoreCase(policy)) {
+            delegate = new ThreadPoolExecutor.CallerRunsPolicy();
+        } else if ("abort".equalsIgnoreCase(policy)) {
+            delegate = new ThreadPoolExecutor.AbortPolicy();
+        } else if ("discard".equalsIgnoreCase(policy)) {
+            delegate = new ThreadPoolExecutor.DiscardPolicy();
+        } else if ("discard-oldest".equalsIgnoreCase(policy)) {
+            delegate = new ThreadPoolExecutor.DiscardOldestPolicy();
+        } else {
+            throw new IllegalArgumentException("unknown rejection policy: " + policy + ", expected caller-runs, abort, discard or discard-oldest");
+        }
+        if (current instanceof CountingRejectedExecutionHandler) {
+            return ((CountingRejectedExecutionHandler) current).withDelegate(delegate);
+        }
+        return new CountingRejectedExecutionHandler(delegate);
+    }
+
+    private static String rejectionPolicyName(RejectedExecutionHandler handler) {
+        if (handler instanceof CountingRejectedExecutionHandler) {
+            handler = ((CountingRejectedExecutionHandler) handler).getDelegate();
+        }
+        if (handler instanceof ThreadPoolExecutor.AbortPolicy) {
+            return "abort";
+        }
+        if (handler instanceof ThreadPoolExecutor.DiscardPolicy) {
+            return "discard";
+        }
+        if (handler instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+            return "discard-oldest";
+        }
+        return "caller-runs";
+    }
+
+    /**
+     * 在运行中调整线程池，排队中的任务不受影响
+     * 核心线程数、最大线程数、队列容量、空闲时间和拒绝策略立即生效；执行模式、队列类型和老化时间只在创建时生效，修改会被忽略。
+     * 默认线程池开启了自动调整时，核心线程数之后仍会被自动调整，只是从新的值开始
+     *
+     * @param name       线程池名称，default表示默认的Promise线程池
+     * @param properties 新的配置，一般先通过{@link #getProperties(String)}获取当前配置再修改
+     * @throws RuntimeException 没有这个名称的线程池
+     */
+    public static void reconfigure(String name, NamedExecutorProperties properties) {
+        Executor executor = getExecutor(name);
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            log.warn("promise executor '{}' uses virtual threads, pool settings cannot be changed at runtime.", name);
+            return;
+        }
+        if (!(executor instanceof ThreadPoolTaskExecutor)) {
+            log.warn("promise executor '{}' is not a ThreadPoolTaskExecutor, cannot reconfigure.", name);
+            return;
+        }
+        int core = properties.getCorePoolSize();
+        int max = properties.getMaxPoolSize();
+        if (core < 0 || max <= 0 || max < core) {
+            throw new IllegalArgumentException("invalid pool size, core: " + core + ", max: " + max);
+        }
+        ThreadPoolTaskExecutor pool = (ThreadPoolTaskExecutor) executor;
+        NamedExecutorProperties current = getProperties(name);
+        if (!current.getQueueType().equalsIgnoreCase(properties.getQueueType()) || "virtual".equalsIgnoreCase(properties.getMode())) {
+            log.warn("mode and queue-type of promise executor '{}' cannot be changed at runtime, ignored.", name);
+        }
+        // 先调大最大线程数或先调小核心线程数，保证任何时候核心线程数都不大于最大线程数
+        if (core > pool.getMaxPoolSize()) {
+            pool.setMaxPoolSize(max);
+            pool.setCorePoolSize(core);
+        } else {
+            pool.setCorePoolSize(core);
+            pool.setMaxPoolSize(max);
+        }
+        pool.setKeepAliveSeconds(properties.getKeepAliveSeconds());
+        if (current.getQueueCapacity() != properties.getQueueCapacity()) {
+            if (pool instanceof ResizableThreadPoolTaskExecutor) {
+                pool.setQueueCapacity(properties.getQueueCapacity());
+            } else {
+                log.warn("queue of promise executor '{}' is not resizable, queue-capacity ignored.", name);
+            }
+        }
+        if (!current.getRejectionPolicy().equalsIgnoreCase(properties.getRejectionPolicy())) {
+            RejectedExecutionHandler handler = rejectedHandler(properties, pool.getThreadPoolExecutor().getRejectedExecutionHandler());
+            pool.setRejectedExecutionHandler(handler);
+            pool.getThreadPoolExecutor().setRejectedExecutionHandler(handler);
+        }
+        log.info("promise executor '{}' reconfigured, core: {}, max: {}, queue: {}, keep-alive: {}s, rejection: {}", name,
+                core, max, properties.getQueueCapacity(), properties.getKeepAliveSeconds(), properties.getRejectionPolicy());
+    }
+
+    /**
+     * 获取线程池当前的配置
+     *
+     * @param name 线程池名称，default表示默认的Promise线程池
+     * @return 配置的副本，修改后通过{@link #reconfigure(String, NamedExecutorProperties)}生效
+     * @throws RuntimeException 没有这个名称的线程池
+     */
+    public static NamedExecutorProperties getProperties(String name) {
+        Executor executor = getExecutor(name);
+        NamedExecutorProperties properties = new NamedExecutorProperties();
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            properties.setMode("virtual");
+            properties.setMaxConcurrency(((ConcurrencyLimitedExecutor) executor).getMaxConcurrency());
+            return properties;
+        }
+        if (!(executor instanceof ThreadPoolTaskExecutor)) {
+            properties.setMode("virtual");
+            return properties;
+        }
+        ThreadPoolTaskExecutor pool = (ThreadPoolTaskExecutor) executor;
+        ThreadPoolExecutor threadPool = pool.getThreadPoolExecutor();
+        properties.setCorePoolSize(threadPool.getCorePoolSize());
+        properties.setMaxPoolSize(threadPool.getMaximumPoolSize());
+        properties.setKeepAliveSeconds((int) threadPool.getKeepAliveTime(TimeUnit.SECONDS));
+        properties.setThreadNamePrefix(pool.getThreadNamePrefix());
+        properties.setRejectionPolicy(rejectionPolicyName(threadPool.getRejectedExecutionHandler()));
+        BlockingQueue<Runnable> queue = threadPool.getQueue();
+        properties.setQueueCapacity(queue instanceof ResizableQueue ? ((ResizableQueue) queue).getCapacity() : queue.size() + queue.remainingCapacity());
+        if (queue instanceof PriorityTaskQueue) {
+            properties.setQueueType("priority");
+            properties.setPriorityAgingMillis(((PriorityTaskQueue) queue).getAgingMillis());
+        }
+        return properties;
+    }
+
+    /**
+     * 从Environment重新读取promise.executor和promise.executors下的配置，应用到运行中的线程池
+     * 只调整配置相对上次应用时有变化的线程池，通过reconfigure做的调整不会被无关的刷新覆盖。
+     * 默认线程池开启了自动调整时，核心线程数由自动调整管理，刷新只更新adaptive下的上下限。
+     * 新增的命名线程池会被创建；删除的命名线程池保持不变。使用Spring Cloud时，配置刷新后会自动调用
+     */
+    public void refresh() {
+        if (environment == null) {
+            log.warn("promiseExecutor is not created by spring, cannot refresh.");
+            return;
+        }
+        Binder binder = Binder.get(environment);
+        NamedExecutorProperties defaults = binder.bind("promise.executor", Bindable.of(NamedExecutorProperties.class))
+                .orElseGet(NamedExecutorProperties::new);
+        if (promiseExecutor != null) {
+            boolean adaptive = adaptivePoolSizer != null;
+            if (adaptive) {
+                refreshAdaptiveBounds(binder);
+            }
+            refresh(DEFAULT_EXECUTOR_NAME, defaults, adaptive);
+        }
+        Map<String, NamedExecutorProperties> named = binder
+                .bind("promise.executors", Bindable.mapOf(String.class, NamedExecutorProperties.class))
+                .orElse(Collections.emptyMap());
+        named.forEach((name, properties) -> {
+            if (NAMED_EXECUTORS.containsKey(name)) {
+                refresh(name, properties, false);
+            } else {
+                log.info("start promise executor: {}", name);
+                registerOwned(name, createExecutor(properties, properties.getThreadNamePrefix() != null ? properties.getThreadNamePrefix() : name));
+                appliedProperties.put(name, properties);
+            }
+        });
+    }
+
+    /**
+     * 配置有变化时调整线程池
+     *
+     * @param name          线程池名称
+     * @param properties    新读取的配置
+     * @param adaptiveSized 核心线程数和最大线程数是否由自动调整管理
+     */
+    private void refresh(String name, NamedExecutorProperties properties, boolean adaptiveSized) {
+        NamedExecutorProperties applied = appliedProperties.get(name);
+        if (applied != null && sameSettings(applied, properties, !adaptiveSized)) {
+            return;
+        }
+        NamedExecutorProperties target = properties;
+        if (adaptiveSized) {
+            // 保留自动调整得到的大小，只应用其他配置
+            NamedExecutorProperties current = getProperties(name);
+            target = copy(properties);
+            target.setCorePoolSize(current.getCorePoolSize());
+            target.setMaxPoolSize(current.getMaxPoolSize());
+        }
+        reconfigure(name, target);
+        appliedProperties.put(name, properties);
+    }
+
+    /**
+     * 刷新自动调整的上下限
+     *
+     * @param binder 配置绑定
+     */
+    private void refreshAdaptiveBounds(Binder binder) {
+        int min = binder.bind("promise.executor.adaptive.min-pool-size", Bindable.of(Integer.class)).orElse(adaptiveMinPoolSize);
+        int max = binder.bind("promise.executor.adaptive.max-pool-size", Bindable.of(Integer.class)).orElse(adaptiveMaxPoolSize);
+        if (min == adaptivePoolSizer.getMinPoolSize() && max == adaptivePoolSizer.getMaxPoolSize()) {
+            return;
+        }
+        adaptivePoolSizer.setBounds(min, max);
+        adaptiveMinPoolSize = min;
+        adaptiveMaxPoolSize = max;
+    }
+
+    /**
+     * 比较两份配置，执行模式和队列类型虽然不能调整，变化时也要经过reconfigure给出提示
+     *
+     * @param a         配置
+     * @param b         配置
+     * @param withSizes 是否比较核心线程数和最大线程数
+     * @return 是否相同
+     */
+    private static boolean sameSettings(NamedExecutorProperties a, NamedExecutorProperties b, boolean withSizes) {
+        if (withSizes && (a.getCorePoolSize() != b.getCorePoolSize() || a.getMaxPoolSize() != b.getMaxPoolSize())) {
+            return false;
+        }
+        return a.getQueueCapacity() == b.getQueueCapacity()
+                && a.getKeepAliveSeconds() == b.getKeepAliveSeconds()
+                && a.getRejectionPolicy().equalsIgnoreCase(b.getRejectionPolicy())
+                && a.getMode().equalsIgnoreCase(b.getMode())
+                && a.getQueueType().equalsIgnoreCase(b.getQueueType());
+    }
+
+    private static NamedExecutorProperties copy(NamedExecutorProperties properties) {
+        NamedExecutorProperties copy = new NamedExecutorProperties();
+        copy.setCorePoolSize(properties.getCorePoolSize());
+        copy.setMaxPoolSize(properties.getMaxPoolSize());
+        copy.setQueueCapacity(properties.getQueueCapacity());
+        copy.setKeepAliveSeconds(properties.getKeepAliveSeconds());
+        copy.setThreadNamePrefix(properties.getThreadNamePrefix());
+        copy.setMode(properties.getMode());
+        copy.setMaxConcurrency(properties.getMaxConcurrency());
+        copy.setQueueType(properties.getQueueType());
+        copy.setPriorityAgingMillis(properties.getPriorityAgingMillis());
+        copy.setRejectionPolicy(properties.getRejectionPolicy());
+        return copy;
+    }
+
+    @Override
+    public boolean supportsEventType(Class<? extends ApplicationEvent> eventType) {
+        return ENVIRONMENT_CHANGE_EVENT.equals(eventType.getName());
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error(e.getMessage());
+        }
+    }
+
     /**
      * 手动初始化线程池
      *
@@ -58,14 +508,104 @@ public class PromiseExecutor implements DisposableBean {
      */
     public static void initExecutor(Executor promiseExecutor) {
         PromiseExecutor.promiseExecutor = promiseExecutor;
+        shutdown = false;
+    }
+
+    /**
+     * 注册一个命名线程池，已有同名线程池时替换
+     *
+     * @param name     名称
+     * @param executor 线程池
+     */
+    public static void registerExecutor(String name, Executor executor) {
+        NAMED_EXECUTORS.put(name, executor);
+    }
+
+    /**
+     * 注销一个命名线程池，不会关闭它，之后指定这个名称的Promise会启动失败
+     *
+     * @param name 名称
+     * @return 被注销的线程池，没有这个名称时为null
+     */
+    public static Executor unregisterExecutor(String name) {
+        return NAMED_EXECUTORS.remove(name);
+    }
+
+    /**
+     * 获取命名线程池，default表示默认的Promise线程池
+     *
+     * @param name 名称
+     * @return 线程池
+     * @throws RuntimeException 没有这个名称的线程池
+     */
+    public static Executor getExecutor(String name) {
+        Executor executor = NAMED_EXECUTORS.get(name);
+        if (executor != null) {
+            return executor;
+        }
+        if (DEFAULT_EXECUTOR_NAME.equals(name)) {
+            return getPromiseExecutor();
+        }
+        throw new RuntimeException("promise executor '" + name + "' has not been configured, please check promise.executors." + name + " or call PromiseExecutor.registerExecutor() first.");
+    }
+
+    /**
+     * 获取所有命名线程池，不包括默认线程池
+     *
+     * @return 名称到线程池的只读映射
+     */
+    public static Map<String, Executor> getExecutors() {
+        return Collections.unmodifiableMap(NAMED_EXECUTORS);
+    }
+
+    /**
+     * 手动初始化分治任务线程池
+     *
+     * @param forkJoinPool 线程池
+     */
+    public static void initForkJoinPool(ForkJoinPool forkJoinPool) {
+        PromiseExecutor.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * 获取已经创建的分治任务线程池，不会创建新的
+     *
+     * @return 线程池，没有创建时为null
+     */
+    public static ForkJoinPool getForkJoinPoolIfPresent() {
+        return forkJoinPool;
+    }
+
+    /**
+     * 获取分治任务线程池
+     * 没有初始化时按Promise线程池的并行度创建一个
+     *
+     * @return 线程池
+     */
+    public static ForkJoinPool getForkJoinPool() {
+        ForkJoinPool pool = forkJoinPool;
+        if (pool == null) {
+            synchronized (PromiseExecutor.class) {
+                pool = forkJoinPool;
+                if (pool == null) {
+                    pool = ThreadsUtils.createForkJoinPool(getParallelism(getPromiseExecutor()), "promise-fj");
+                    forkJoinPool = pool;
+                }
+            }
+        }
+        return pool;
     }
 
     /**
      * 获取线程池
      *
      * @return 线程池
+     * @throws RejectedExecutionException 线程池已经被shutdownGracefully关闭
      */
     public static Executor getPromiseExecutor() {
+        if (shutdown) {
+            throw new RejectedExecutionException("promise executors have been shut down, please call PromiseExecutor.initExecutor() to start again.");
+        }
         if (promiseExecutor == null) {
             Executor promiseExecutor1;
             try {
@@ -78,16 +618,390 @@ public class PromiseExecutor implements DisposableBean {
         return promiseExecutor;
     }
 
+    /**
+     * 获取当前注册的所有线程池因为队列已满而触发拒绝策略的任务数之和
+     *
+     * @return 被拒绝的任务数
+     */
+    public static long getRejectedCount() {
+        long count = 0;
+        Executor executor = promiseExecutor;
+        if (executor != null) {
+            count += getRejectedCount(executor);
+        }
+        for (Executor named : NAMED_EXECUTORS.values()) {
+            count += getRejectedCount(named);
+        }
+        return count;
+    }
+
+    /**
+     * 获取线程池因为队列已满而触发拒绝策略的任务数
+     *
+     * @param executor 线程池
+     * @return 被拒绝的任务数，拒绝策略不计数时为0
+     */
+    public static long getRejectedCount(Executor executor) {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            executor = ((ConcurrencyLimitedExecutor) executor).getDelegate();
+        }
+        RejectedExecutionHandler handler = null;
+        try {
+            if (executor instanceof ThreadPoolTaskExecutor) {
+                handler = ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor().getRejectedExecutionHandler();
+            } else if (executor instanceof ThreadPoolExecutor) {
+                handler = ((ThreadPoolExecutor) executor).getRejectedExecutionHandler();
+            }
+        } catch (IllegalStateException e) {
+            // 线程池还没有初始化
+            return 0;
+        }
+        return handler instanceof CountingRejectedExecutionHandler ? ((CountingRejectedExecutionHandler) handler).getRejectedCount() : 0;
+    }
+
+    /**
+     * 从线程池队列中移除还没有开始执行的任务
+     *
+     * @param executor 线程池
+     * @param task     任务
+     * @return 是否移除成功
+     */
+    static boolean removeQueuedTask(Executor executor, Runnable task) {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            return ((ConcurrencyLimitedExecutor) executor).remove(task);
+        }
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            return ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor().remove(task);
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).remove(task);
+        }
+        return false;
+    }
+
+    /**
+     * 估算线程池能同时执行的任务数
+     * 平台线程池在队列满之前只会使用核心线程，所以按核心线程数计算
+     *
+     * @param executor 线程池
+     * @return 并行度，至少为1
+     */
+    static int getParallelism(Executor executor) {
+        int parallelism;
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            parallelism = ((ConcurrencyLimitedExecutor) executor).getMaxConcurrency();
+        } else if (executor instanceof ThreadPoolTaskExecutor) {
+            parallelism = ((ThreadPoolTaskExecutor) executor).getCorePoolSize();
+        } else if (executor instanceof ThreadPoolExecutor) {
+            parallelism = ((ThreadPoolExecutor) executor).getCorePoolSize();
+        } else {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, parallelism);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    /**
+     * 按生命周期阶段排空线程池，在数据源等依赖的Bean销毁之前完成
+     */
+    @Override
+    public void stop() {
+        try {
+            if (!drained) {
+                drained = true;
+                shutdownOwned();
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return shutdownPhase;
+    }
+
     @Override
     public void destroy() throws Exception {
-        if (promiseExecutor instanceof ThreadPoolTaskExecutor) {
-            ((ThreadPoolTaskExecutor) promiseExecutor).shutdown();
+        if (adaptivePoolSizer != null) {
+            adaptivePoolSizer.stop();
+        }
+        // 没有经过生命周期的stop（比如容器启动失败）时在这里排空
+        if (!drained) {
+            drained = true;
+            shutdownOwned();
+        }
+    }
+
+    /**
+     * 排空并注销当前Bean创建的线程池，其他容器或手动注册的线程池不受影响
+     */
+    private void shutdownOwned() {
+        Map<String, Executor> executors = new LinkedHashMap<>(ownedExecutors);
+        drain(executors, Duration.ofMillis(shutdownTimeoutMillis), executors.values());
+        executors.forEach((name, executor) -> {
+            // 已经被替换成其他线程池时保留
+            NAMED_EXECUTORS.remove(name, executor);
+            if (promiseExecutor == executor) {
+                promiseExecutor = null;
+            }
+            if (forkJoinPool == executor) {
+                forkJoinPool = null;
+            }
+        });
+        ownedExecutors.clear();
+    }
+
+    /**
+     * 关闭当前JVM中所有Promise线程池，包括其他容器创建的和手动注册的：先停止接收新任务，等待执行中和排队中的任务完成；
+     * 截止时间到达后中断还在执行的任务，取消还在排队的任务，等待这些Promise的线程会立即被唤醒。
+     * 等待重试退避或限流许可的Promise不在任何队列中，会被直接取消。
+     * 关闭之后启动使用默认线程池的Promise会抛出RejectedExecutionException，直到重新initExecutor。
+     * 容器关闭时只排空该容器创建的线程池，不会调用这个方法
+     *
+     * @param timeout 所有线程池共用的最长等待时间
+     * @return 关闭结果
+     */
+    public static ShutdownReport shutdownGracefully(Duration timeout) {
+        Map<String, Executor> executors = new LinkedHashMap<>(NAMED_EXECUTORS);
+        if (promiseExecutor != null) {
+            executors.put(DEFAULT_EXECUTOR_NAME, promiseExecutor);
+        }
+        if (forkJoinPool != null) {
+            executors.put(FORK_JOIN_EXECUTOR_NAME, forkJoinPool);
+        }
+        shutdown = true;
+        ShutdownReport report = drain(executors, timeout, null);
+        // 已关闭的线程池不再可用，分治线程池之后按需重新创建
+        NAMED_EXECUTORS.clear();
+        forkJoinPool = null;
+        promiseExecutor = null;
+        return report;
+    }
+
+    /**
+     * 排空指定的线程池
+     *
+     * @param executors 名称到线程池的映射
+     * @param timeout   所有线程池共用的最长等待时间
+     * @param owners    只取消到期后要提交到这些线程池的挂起任务，为null时取消所有挂起任务
+     * @return 关闭结果
+     */
+    private static ShutdownReport drain(Map<String, Executor> executors, Duration timeout, Collection<Executor> owners) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        executors.forEach(PromiseExecutor::stopAccepting);
+        List<String> undrained = new ArrayList<>();
+        List<String> cancelled = new ArrayList<>();
+        List<String> cancelledWaiting = new ArrayList<>();
+        // 挂起的任务到期后也会被已关闭的线程池拒绝，先取消；排空期间新安排的重试在最后再取消一次
+        PromiseTimer.cancelParked(cancelledWaiting, owners);
+        int interrupted = 0;
+        for (Map.Entry<String, Executor> entry : executors.entrySet()) {
+            try {
+                if (awaitDrained(entry.getValue(), deadline)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            undrained.add(entry.getKey());
+            interrupted += forceShutdown(entry.getValue(), cancelled);
+        }
+        PromiseTimer.cancelParked(cancelledWaiting, owners);
+        ShutdownReport report = new ShutdownReport(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), undrained, interrupted, cancelled, cancelledWaiting);
+        if (report.isClean()) {
+            log.info("promise executors drained in {}ms.", report.getElapsedMillis());
         } else {
-            if (promiseExecutor instanceof ThreadPoolExecutor) {
-                ((ThreadPoolExecutor) promiseExecutor).shutdown();
-            } else {
-                log.warn("promiseExecutor is not ThreadPoolExecutor, cannot shutdown.");
+            log.warn("promise executors {} were not drained within {}ms, {} running tasks interrupted, {} queued tasks cancelled: {}, {} waiting tasks cancelled: {}",
+                    undrained, timeout.toMillis(), interrupted, cancelled.size(), cancelled, cancelledWaiting.size(), cancelledWaiting);
+        }
+        return report;
+    }
+
+    private static void stopAccepting(String name, Executor executor) {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            // 排队中的任务还要交给底层执行器，底层执行器等排空后再关闭
+            ((ConcurrencyLimitedExecutor) executor).shutdown();
+        } else if (executor instanceof ThreadPoolTaskExecutor) {
+            // ThreadPoolTaskExecutor.shutdown()默认会丢弃队列，这里直接关闭底层线程池
+            ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor().shutdown();
+        } else if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        } else {
+            log.warn("{} is not an ExecutorService, cannot stop it from accepting tasks or wait for it.", name);
+        }
+    }
+
+    /**
+     * 等待线程池执行完所有任务
+     *
+     * @param executor 线程池
+     * @param deadline 截止时间，System.nanoTime()
+     * @return 是否在截止时间前执行完
+     * @throws InterruptedException 等待时被中断
+     */
+    private static boolean awaitDrained(Executor executor, long deadline) throws InterruptedException {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            ConcurrencyLimitedExecutor limiter = (ConcurrencyLimitedExecutor) executor;
+            if (!limiter.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
             }
+            Executor delegate = limiter.getDelegate();
+            stopAccepting("delegate", delegate);
+            return awaitDrained(delegate, deadline);
+        }
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            executor = ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor();
+        }
+        if (executor instanceof ExecutorService) {
+            return ((ExecutorService) executor).awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * 立即关闭线程池，取消还在排队的任务
+     *
+     * @param executor  线程池
+     * @param cancelled 被取消的任务描述
+     * @return 被中断的执行中任务数
+     */
+    private static int forceShutdown(Executor executor, List<String> cancelled) {
+        int interrupted = 0;
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            ConcurrencyLimitedExecutor limiter = (ConcurrencyLimitedExecutor) executor;
+            limiter.drainPending().forEach((task) -> cancel(task, cancelled));
+            interrupted += limiter.getActiveCount();
+            executor = limiter.getDelegate();
+            forceShutdown(executor, cancelled);
+            return interrupted;
+        }
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            executor = ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor();
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            interrupted = ((ThreadPoolExecutor) executor).getActiveCount();
+        } else if (executor instanceof ForkJoinPool) {
+            interrupted = ((ForkJoinPool) executor).getActiveThreadCount();
+        }
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow().forEach((task) -> cancel(task, cancelled));
+        }
+        return interrupted;
+    }
+
+    private static void cancel(Runnable task, List<String> cancelled) {
+        task = ConcurrencyLimitedExecutor.unwrap(task);
+        // Promise提交的任务是Promise的Future视图，取消后等待者会被唤醒
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+        cancelled.add(task.toString());
+    }
+
+    /**
+     * promise.executors.&lt;name&gt;下的线程池配置，没有配置的项和默认线程池的默认值一致
+     */
+    public static class NamedExecutorProperties {
+        private int corePoolSize = 16;
+        private int maxPoolSize = 32;
+        private int queueCapacity = 127;
+        private int keepAliveSeconds = 60;
+        private String threadNamePrefix;
+        private String mode = "platform";
+        private int maxConcurrency = 0;
+        private String queueType = "fifo";
+        private long priorityAgingMillis = 100;
+        private String rejectionPolicy = "caller-runs";
+
+        public int getCorePoolSize() {
+            return corePoolSize;
+        }
+
+        public void setCorePoolSize(int corePoolSize) {
+            this.corePoolSize = corePoolSize;
+        }
+
+        public int getMaxPoolSize() {
+            return maxPoolSize;
+        }
+
+        public void setMaxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getKeepAliveSeconds() {
+            return keepAliveSeconds;
+        }
+
+        public void setKeepAliveSeconds(int keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+        }
+
+        public String getThreadNamePrefix() {
+            return threadNamePrefix;
+        }
+
+        public void setThreadNamePrefix(String threadNamePrefix) {
+            this.threadNamePrefix = threadNamePrefix;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public String getQueueType() {
+            return queueType;
+        }
+
+        public void setQueueType(String queueType) {
+            this.queueType = queueType;
+        }
+
+        public long getPriorityAgingMillis() {
+            return priorityAgingMillis;
+        }
+
+        public void setPriorityAgingMillis(long priorityAgingMillis) {
+            this.priorityAgingMillis = priorityAgingMillis;
+        }
+
+        public String getRejectionPolicy() {
+            return rejectionPolicy;
+        }
+
+        public void setRejectionPolicy(String rejectionPolicy) {
+            this.rejectionPolicy = rejectionPolicy;
         }
     }
 }
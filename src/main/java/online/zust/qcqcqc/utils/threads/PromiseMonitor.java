@@ -0,0 +1,24 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+
+/**
+ * Promise生命周期监控
+ * 通过Promise.setMonitor()设置，没有设置时Promise不会记录任何时间
+ *
+ * @author qcqcqc
+ */
+@FunctionalInterface
+public interface PromiseMonitor {
+    /**
+     * 一个带任务的Promise执行完成、回调全部执行完之后调用
+     * 只在执行任务的线程完成Promise时调用，同步执行，实现需要足够快；被complete、超时或取消提前完成时不调用。
+     * 设置了重试时，排队和执行时间都是所有执行之和，重试退避和等待限流许可的时间都不计入
+     *
+     * @param status        最终状态
+     * @param queueNanos    任务在线程池队列中等待的总时间，同步执行时为-1
+     * @param executeNanos  任务执行的总时间
+     * @param callbackNanos 执行回调和唤醒等待线程的时间
+     */
+    void onComplete(PromiseStatus status, long queueNanos, long executeNanos, long callbackNanos);
+}
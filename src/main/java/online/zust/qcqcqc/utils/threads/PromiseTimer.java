@@ -0,0 +1,323 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.timer.HashedWheelTimer;
+import online.zust.qcqcqc.utils.threads.timer.TimerHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Promise共享定时器
+ * 所有超时和延迟任务都由同一个时间轮计时，到期后把回调交给专用的派发线程池执行，不会每个定时任务占用一个线程。
+ * 派发线程池的队列不限长度，也不会退回到调用方执行，定时线程本身从不执行用户代码；
+ * 重试和限流等待到期后由派发线程把任务重新提交到原来的线程池，周期任务到期后由派发线程提交到Promise线程池
+ *
+ * @author qcqcqc
+ */
+final class PromiseTimer {
+    private static final Logger log = LoggerFactory.getLogger(PromiseTimer.class);
+    /**
+     * 派发线程池，线程空闲一分钟后回收
+     */
+    private static final ThreadPoolExecutor DISPATCHER = createDispatcher();
+    /**
+     * 等待重试退避或限流许可、不在任何线程池队列中的Promise任务，关闭线程池时由这里取消
+     */
+    private static final Set<ParkedTask> PARKED = ConcurrentHashMap.newKeySet();
+    /**
+     * 1毫秒一个刻度，4096个刻度一圈
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer("promise-timer", 1, TimeUnit.MILLISECONDS, 4096, PromiseTimer::dispatch);
+
+    private PromiseTimer() {
+    }
+
+    /**
+     * 延迟执行
+     *
+     * @param task  到期后交给派发线程池执行的回调
+     * @param delay 延迟
+     * @param unit  时间单位
+     * @return 可取消的定时任务
+     */
+    static TimerHandle schedule(Runnable task, long delay, TimeUnit unit) {
+        return TIMER.newTimeout(task, delay, unit);
+    }
+
+    /**
+     * 延迟执行，回调无法交给派发线程池时取消所属的Promise
+     *
+     * @param task  到期后交给派发线程池执行的回调
+     * @param delay 延迟
+     * @param unit  时间单位
+     * @param owner 回调所属的Promise
+     * @return 可取消的定时任务
+     */
+    static TimerHandle schedule(Runnable task, long delay, TimeUnit unit, Promise<?> owner) {
+        return TIMER.newTimeout(new OwnedTask(task, owner), delay, unit);
+    }
+
+    /**
+     * 延迟后继续执行Promise任务，等待期间登记为挂起任务，关闭线程池时可以被cancelParked取消
+     *
+     * @param task     Promise的Future视图，到期后交给派发线程池执行
+     * @param executor 到期后任务要提交到的线程池，为null时表示默认线程池
+     * @param delay    延迟
+     * @param unit     时间单位
+     * @param <F>      任务类型
+     * @return 可取消的定时任务，取消时同时移除登记
+     */
+    static <F extends Runnable & Future<?>> TimerHandle park(F task, Executor executor, long delay, TimeUnit unit) {
+        ParkedTask parked = new ParkedTask(task, task, executor);
+        PARKED.add(parked);
+        parked.handle = TIMER.newTimeout(parked, delay, unit);
+        return parked;
+    }
+
+    /**
+     * 取消挂起的Promise任务
+     *
+     * @param cancelled 被取消的任务描述
+     * @param executors 只取消到期后要提交到这些线程池的任务，为null时取消所有
+     */
+    static void cancelParked(List<String> cancelled, Collection<Executor> executors) {
+        for (ParkedTask parked : PARKED) {
+            if (executors != null && !executors.contains(parked.executor)) {
+                continue;
+            }
+            if (parked.cancel() && parked.future.cancel(false)) {
+                cancelled.add(parked.task.toString());
+            }
+        }
+    }
+
+    /**
+     * 固定频率周期执行，每次到期后把任务交给Promise线程池执行，执行结束后再安排下一次
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟
+     * @param period       周期
+     * @param unit         时间单位
+     * @return 周期任务句柄
+     */
+    static TimerHandle scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return schedulePeriodic(task, initialDelay, period, unit, true);
+    }
+
+    /**
+     * 固定延迟周期执行，每次到期后把任务交给Promise线程池执行，执行结束后再延迟指定时间执行下一次
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟
+     * @param delay        两次执行之间的延迟
+     * @param unit         时间单位
+     * @return 周期任务句柄
+     */
+    static TimerHandle scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return schedulePeriodic(task, initialDelay, delay, unit, false);
+    }
+
+    private static TimerHandle schedulePeriodic(Runnable task, long initialDelay, long period, TimeUnit unit, boolean fixedRate) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be greater than 0: " + period);
+        }
+        PeriodicPromise periodic = new PeriodicPromise(task, unit.toNanos(period), fixedRate);
+        periodic.schedule(unit.toNanos(Math.max(0L, initialDelay)));
+        return periodic;
+    }
+
+    /**
+     * 把到期的回调交给派发线程池
+     * 交接失败时不在定时线程中执行回调，而是取消回调所属的Promise，等待它的线程不会永远挂起
+     *
+     * @param task 回调
+     */
+    private static void dispatch(Runnable task) {
+        try {
+            DISPATCHER.execute(task);
+        } catch (RuntimeException e) {
+            log.error(e.getMessage());
+            if (task instanceof ParkedTask) {
+                ((ParkedTask) task).future.cancel(false);
+            } else if (task instanceof OwnedTask) {
+                ((OwnedTask) task).owner.cancel(false);
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor createDispatcher() {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (r) -> {
+            Thread thread = new Thread(r, "promise-timer-dispatch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 带所属Promise的回调
+     */
+    private static final class OwnedTask implements Runnable {
+        private final Runnable task;
+        private final Promise<?> owner;
+
+        private OwnedTask(Runnable task, Promise<?> owner) {
+            this.task = task;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * 在Promise线程池中执行的周期任务
+     * 到期时派发线程只负责提交，用户代码不会占用派发线程；本次执行结束后才安排下一次，同一个周期任务不会并发执行
+     */
+    private static final class PeriodicPromise implements Runnable, TimerHandle {
+        private final Runnable task;
+        private final long period;
+        private final boolean fixedRate;
+        private volatile boolean cancelled;
+        private volatile TimerHandle current;
+        private long nextRunTime;
+
+        private PeriodicPromise(Runnable task, long period, boolean fixedRate) {
+            this.task = task;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        private void schedule(long delayNanos) {
+            nextRunTime = System.nanoTime() + delayNanos;
+            current = TIMER.newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Promise<?> promise = Promise.resolve(task);
+            promise.addFinishCallBack(() -> finish(promise));
+            promise.startAsync();
+        }
+
+        /**
+         * 本次执行结束后安排下一次，线程池已经关闭时不再安排
+         *
+         * @param promise 本次执行
+         */
+        private void finish(Promise<?> promise) {
+            Exception cause = promise.getCause();
+            if (cause instanceof RejectedExecutionException) {
+                log.error(cause.getMessage());
+                cancelled = true;
+                return;
+            }
+            if (cause != null) {
+                log.error("periodic task error: {}", cause.getMessage());
+            }
+            if (cancelled) {
+                return;
+            }
+            if (fixedRate) {
+                nextRunTime += period;
+                current = TIMER.newTimeout(this, Math.max(0L, nextRunTime - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } else {
+                schedule(period);
+            }
+            // 取消与重新安排并发时，确保新安排的任务也被取消
+            if (cancelled) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            TimerHandle handle = current;
+            if (handle != null) {
+                handle.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+    }
+
+    /**
+     * 挂起的Promise任务，从登记中移除的一方负责执行或取消
+     */
+    private static final class ParkedTask implements Runnable, TimerHandle {
+        private final Runnable task;
+        private final Future<?> future;
+        private final Executor executor;
+        private volatile TimerHandle handle;
+
+        private ParkedTask(Runnable task, Future<?> future, Executor executor) {
+            this.task = task;
+            this.future = future;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            if (PARKED.remove(this)) {
+                task.run();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!PARKED.remove(this)) {
+                return false;
+            }
+            // 登记之后、handle赋值之前被取消时，到期后run会发现已经移除
+            TimerHandle h = handle;
+            if (h != null) {
+                h.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            TimerHandle h = handle;
+            return h != null && h.isCancelled();
+        }
+
+        @Override
+        public boolean isExpired() {
+            TimerHandle h = handle;
+            return h != null && h.isExpired();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+
+/**
+ * 一个Promise各阶段耗时的快照，由PromiseTracer.dump()生成
+ * 所有耗时单位都是纳秒，没有经过的阶段为-1
+ *
+ * @author qcqcqc
+ */
+public final class PromiseTrace {
+    private final long sequence;
+    private final String taskClass;
+    private final String threadName;
+    private final PromiseStatus status;
+    private final long createToSubmitNanos;
+    private final long queueNanos;
+    private final long executeNanos;
+    private final long callbackNanos;
+    private final long finallyNanos;
+    private final long completionNanos;
+
+    PromiseTrace(long sequence, String taskClass, String threadName, PromiseStatus status, long createToSubmitNanos,
+                 long queueNanos, long executeNanos, long callbackNanos, long finallyNanos, long completionNanos) {
+        this.sequence = sequence;
+        this.taskClass = taskClass;
+        this.threadName = threadName;
+        this.status = status;
+        this.createToSubmitNanos = createToSubmitNanos;
+        this.queueNanos = queueNanos;
+        this.executeNanos = executeNanos;
+        this.callbackNanos = callbackNanos;
+        this.finallyNanos = finallyNanos;
+        this.completionNanos = completionNanos;
+    }
+
+    /**
+     * 记录序号，越大越新
+     *
+     * @return 序号
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 任务的类名，lambda任务为编译器生成的类名
+     *
+     * @return 类名
+     */
+    public String getTaskClass() {
+        return taskClass;
+    }
+
+    /**
+     * 执行任务的线程名
+     *
+     * @return 线程名
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * 最终状态
+     *
+     * @return 状态
+     */
+    public PromiseStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 从创建到第一次提交线程池的时间，同步执行时为-1
+     *
+     * @return 纳秒
+     */
+    public long getCreateToSubmitNanos() {
+        return createToSubmitNanos;
+    }
+
+    /**
+     * 在线程池队列中等待的时间，重试时是每次执行的排队时间之和，不包括重试退避和等待限流许可的时间；同步执行时为-1
+     *
+     * @return 纳秒
+     */
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * 任务本身的执行时间，重试时是每次执行的时间之和
+     *
+     * @return 纳秒
+     */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /**
+     * onSucceed、onFail、onException回调的执行时间
+     *
+     * @return 纳秒
+     */
+    public long getCallbackNanos() {
+        return callbackNanos;
+    }
+
+    /**
+     * onFinally回调的执行时间
+     *
+     * @return 纳秒
+     */
+    public long getFinallyNanos() {
+        return finallyNanos;
+    }
+
+    /**
+     * 执行后续Promise的完成回调和唤醒等待线程的时间
+     *
+     * @return 纳秒
+     */
+    public long getCompletionNanos() {
+        return completionNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + status + " task=" + taskClass + " thread=" + threadName
+                + " submit=" + micros(createToSubmitNanos) + " queue=" + micros(queueNanos)
+                + " execute=" + micros(executeNanos) + " callback=" + micros(callbackNanos)
+                + " finally=" + micros(finallyNanos) + " completion=" + micros(completionNanos);
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 0 ? "-" : (nanos / 1000) + "us";
+    }
+}
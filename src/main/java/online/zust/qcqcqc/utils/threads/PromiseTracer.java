@@ -0,0 +1,181 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Promise执行过程采样追踪
+ * 开启后按采样率选中的Promise会记录创建、提交、开始执行、回调等各阶段的时间，完成后写入固定大小的环形缓冲区，
+ * 写入时无锁且不分配对象，缓冲区满后覆盖最旧的记录。关闭时Promise只多一次volatile读
+ *
+ * @author qcqcqc
+ */
+public final class PromiseTracer {
+    private static final VarHandle VERSION;
+    private static volatile Ring ring;
+
+    static {
+        try {
+            VERSION = MethodHandles.lookup().findVarHandle(Slot.class, "version", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private PromiseTracer() {
+    }
+
+    /**
+     * 开启追踪
+     *
+     * @param capacity   保留的最近记录数，会向上取整为2的幂
+     * @param sampleRate 每多少个Promise采样一个，1表示全部采样
+     */
+    public static void enable(int capacity, int sampleRate) {
+        if (capacity <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("capacity and sampleRate must be greater than 0");
+        }
+        ring = new Ring(capacity, sampleRate);
+    }
+
+    /**
+     * 关闭追踪并丢弃已有记录
+     */
+    public static void disable() {
+        ring = null;
+    }
+
+    /**
+     * 是否已开启追踪
+     *
+     * @return 是否开启
+     */
+    public static boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * 导出缓冲区中的记录，按从旧到新排列
+     * 导出时正在被覆盖的记录会被跳过
+     *
+     * @return 记录列表，没有开启时为空列表
+     */
+    public static List<PromiseTrace> dump() {
+        Ring r = ring;
+        List<PromiseTrace> traces = new ArrayList<>();
+        if (r == null) {
+            return traces;
+        }
+        for (Slot slot : r.slots) {
+            PromiseTrace trace = slot.read();
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+        traces.sort(Comparator.comparingLong(PromiseTrace::getSequence));
+        return traces;
+    }
+
+    /**
+     * 当前创建的Promise是否需要追踪
+     *
+     * @return 是否采样
+     */
+    static boolean sample() {
+        Ring r = ring;
+        return r != null && (r.sampleRate == 1 || ThreadLocalRandom.current().nextInt(r.sampleRate) == 0);
+    }
+
+    /**
+     * 写入一条记录，各时间点为System.nanoTime()
+     *
+     * @param taskClass       任务类
+     * @param threadName      完成Promise的线程名
+     * @param status          最终状态
+     * @param createToSubmit  从创建到第一次提交线程池的时间，同步执行时为-1
+     * @param queue           所有执行在线程池队列中等待的时间之和，同步执行时为-1
+     * @param execute         所有执行的执行时间之和
+     * @param settledAt       最后一次执行结束的时间
+     * @param callbacksDoneAt 成功、失败、异常回调执行完的时间
+     * @param finallyDoneAt   最终回调执行完的时间
+     * @param completedAt     完成回调执行完、等待线程唤醒后的时间
+     */
+    static void record(Class<?> taskClass, String threadName, PromiseStatus status, long createToSubmit, long queue,
+                       long execute, long settledAt, long callbacksDoneAt, long finallyDoneAt, long completedAt) {
+        Ring r = ring;
+        if (r == null) {
+            return;
+        }
+        long sequence = r.sequence.getAndIncrement();
+        Slot slot = r.slots[(int) (sequence & r.mask)];
+        long version = slot.version;
+        // 另一个线程正在写同一个槽位（缓冲区已经绕了一圈），直接丢弃这条记录
+        if ((version & 1) != 0 || !VERSION.compareAndSet(slot, version, version + 1)) {
+            return;
+        }
+        slot.sequence = sequence;
+        slot.taskClass = taskClass;
+        slot.threadName = threadName;
+        slot.status = status;
+        slot.createToSubmit = createToSubmit;
+        slot.queue = queue;
+        slot.execute = execute;
+        slot.callback = callbacksDoneAt - settledAt;
+        slot.finallyTime = finallyDoneAt - callbacksDoneAt;
+        slot.completion = completedAt - finallyDoneAt;
+        slot.version = version + 2;
+    }
+
+    private static final class Ring {
+        private final Slot[] slots;
+        private final int mask;
+        private final int sampleRate;
+        private final AtomicLong sequence = new AtomicLong();
+
+        private Ring(int capacity, int sampleRate) {
+            int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+            this.slots = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot();
+            }
+            this.mask = size - 1;
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    /**
+     * 环形缓冲区的一个槽位，version为奇数时表示正在写入，为0时表示还没有写入过
+     */
+    private static final class Slot {
+        private volatile long version;
+        private long sequence;
+        private Class<?> taskClass;
+        private String threadName;
+        private PromiseStatus status;
+        private long createToSubmit;
+        private long queue;
+        private long execute;
+        private long callback;
+        private long finallyTime;
+        private long completion;
+
+        private PromiseTrace read() {
+            long before = version;
+            if (before == 0 || (before & 1) != 0) {
+                return null;
+            }
+            PromiseTrace trace = new PromiseTrace(sequence, taskClass == null ? null : taskClass.getName(), threadName,
+                    status, createToSubmit, queue, execute, callback, finallyTime, completion);
+            // 保证上面的读取不会被重排到版本号校验之后
+            VarHandle.acquireFence();
+            return version == before ? trace : null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Promise组合工具
+ * 所有组合结果都是Promise，通过子Promise的完成回调和共享计数器完成，不占用任何等待线程；
+ * 启动组合结果时会启动所有尚未启动的子Promise
+ *
+ * @author qcqcqc
+ */
+public class Promises {
+
+    /**
+     * 所有Promise都成功时，按原顺序得到全部结果；任意一个失败或取消时立即随之失败
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 结果列表的Promise
+     */
+    public static <T> Promise<List<T>> all(List<Promise<T>> promises) {
+        return allOf(promises);
+    }
+
+    /**
+     * 所有Promise都成功时，按原顺序得到全部结果；任意一个失败或取消时立即随之失败
+     *
+     * @param promises Promise列表
+     * @return 结果列表的Promise
+     */
+    public static Promise<List<Object>> all(Promise<?>... promises) {
+        return allOf(Arrays.asList(promises));
+    }
+
+    /**
+     * 第一个成功的Promise的结果；全部失败时才失败，失败原因中包含每个Promise的异常
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 第一个成功结果的Promise
+     */
+    public static <T> Promise<T> any(List<Promise<T>> promises) {
+        Promise<T> next = Promise.deferred((self) -> startAll(promises));
+        if (promises.isEmpty()) {
+            next.completeExceptionally(new IllegalArgumentException("Promises.any() requires at least one promise"));
+            return next;
+        }
+        AtomicInteger failures = new AtomicInteger(promises.size());
+        for (Promise<T> promise : promises) {
+            promise.addFinishCallBack(() -> {
+                if (promise.getStatus() == PromiseStatus.FULFILLED) {
+                    next.complete(promise.getResult());
+                    return;
+                }
+                if (failures.decrementAndGet() == 0) {
+                    RuntimeException e = new RuntimeException("All promises were rejected");
+                    for (Promise<T> p : promises) {
+                        if (p.getCause() != null) {
+                            e.addSuppressed(p.getCause());
+                        }
+                    }
+                    next.completeExceptionally(e);
+                }
+            });
+        }
+        return next;
+    }
+
+    /**
+     * 第一个成功的Promise的结果；全部失败时才失败，失败原因中包含每个Promise的异常
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 第一个成功结果的Promise
+     */
+    @SafeVarargs
+    public static <T> Promise<T> any(Promise<T>... promises) {
+        return any(Arrays.asList(promises));
+    }
+
+    /**
+     * 第一个完成的Promise，不论成功、失败还是取消，返回的Promise都随之完成
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 第一个完成的Promise的镜像
+     */
+    public static <T> Promise<T> race(List<Promise<T>> promises) {
+        Promise<T> next = Promise.deferred((self) -> startAll(promises));
+        if (promises.isEmpty()) {
+            next.completeExceptionally(new IllegalArgumentException("Promises.race() requires at least one promise"));
+            return next;
+        }
+        for (Promise<T> promise : promises) {
+            promise.addFinishCallBack(() -> {
+                if (!next.propagateFailure(promise)) {
+                    next.complete(promise.getResult());
+                }
+            });
+        }
+        return next;
+    }
+
+    /**
+     * 第一个完成的Promise，不论成功、失败还是取消，返回的Promise都随之完成
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 第一个完成的Promise的镜像
+     */
+    @SafeVarargs
+    public static <T> Promise<T> race(Promise<T>... promises) {
+        return race(Arrays.asList(promises));
+    }
+
+    /**
+     * 所有Promise都完成（不论成功与否）后完成，结果是原Promise列表，可以逐个查看状态和结果
+     *
+     * @param promises Promise列表
+     * @param <T>      结果类型
+     * @return 已完成的Promise列表的Promise
+     */
+    public static <T> Promise<List<Promise<T>>> allSettled(List<Promise<T>> promises) {
+        return settledOf(promises);
+    }
+
+    /**
+     * 所有Promise都完成（不论成功与否）后完成，结果是原Promise列表，可以逐个查看状态和结果
+     *
+     * @param promises Promise列表
+     * @return 已完成的Promise列表的Promise
+     */
+    public static Promise<List<Promise<?>>> allSettled(Promise<?>... promises) {
+        return settledOf(Arrays.asList(promises));
+    }
+
+    /**
+     * allSettled的实现
+     *
+     * @param promises Promise列表
+     * @param <P>      Promise类型
+     * @return 已完成的Promise列表的Promise
+     */
+    private static <P extends Promise<?>> Promise<List<P>> settledOf(List<P> promises) {
+        List<P> settled = Collections.unmodifiableList(new ArrayList<>(promises));
+        Promise<List<P>> next = Promise.deferred((self) -> startAll(settled));
+        if (settled.isEmpty()) {
+            next.complete(settled);
+            return next;
+        }
+        AtomicInteger remaining = new AtomicInteger(settled.size());
+        for (P promise : settled) {
+            promise.addFinishCallBack(() -> {
+                if (remaining.decrementAndGet() == 0) {
+                    next.complete(settled);
+                }
+            });
+        }
+        return next;
+    }
+
+    /**
+     * 延迟指定时间后以null完成
+     * 从启动时开始计时，由共享时间轮计时，不占用任何线程
+     *
+     * @param delay 延迟
+     * @param <T>   结果类型
+     * @return Promise
+     */
+    public static <T> Promise<T> delay(Duration delay) {
+        return Promise.deferred((self) -> PromiseTimer.schedule(() -> self.complete(null), delay.toNanos(), TimeUnit.NANOSECONDS, self));
+    }
+
+    /**
+     * all的实现，结果写入预分配数组的对应下标，最后一个完成的子Promise负责完成结果
+     *
+     * @param promises Promise列表
+     * @param <R>      结果类型
+     * @return 结果列表的Promise
+     */
+    @SuppressWarnings("unchecked")
+    private static <R> Promise<List<R>> allOf(List<? extends Promise<? extends R>> promises) {
+        Promise<List<R>> next = Promise.deferred((self) -> startAll(promises));
+        int size = promises.size();
+        if (size == 0) {
+            next.complete(new ArrayList<>());
+            return next;
+        }
+        Object[] results = new Object[size];
+        AtomicInteger remaining = new AtomicInteger(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            Promise<? extends R> promise = promises.get(i);
+            promise.addFinishCallBack(() -> {
+                if (next.propagateFailure(promise)) {
+                    return;
+                }
+                results[index] = promise.getResult();
+                if (remaining.decrementAndGet() == 0) {
+                    next.complete((List<R>) new ArrayList<>(Arrays.asList(results)));
+                }
+            });
+        }
+        return next;
+    }
+
+    /**
+     * 启动所有尚未启动的Promise
+     *
+     * @param promises Promise列表
+     */
+    private static void startAll(List<? extends Promise<?>> promises) {
+        for (Promise<?> promise : promises) {
+            promise.startIfNew();
+        }
+    }
+}
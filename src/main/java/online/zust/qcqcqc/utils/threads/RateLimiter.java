@@ -0,0 +1,173 @@
+package online.zust.qcqcqc.utils.threads;
+
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseInterruptedException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 令牌桶限流器
+ * 按固定速率发放许可，空闲时最多攒下burst个许可。只记录下一个许可的发放时间，获取许可是一次CAS，
+ * 不需要后台线程补充令牌；许可不足时返回需要等待的时间，由调用方决定是挂在定时器上还是阻塞等待。
+ * 可以被多个Promise和任务列表共享，通过Promise.limit设置后，等待许可期间由定时器计时，不占用线程池线程
+ *
+ * @author qcqcqc
+ */
+public class RateLimiter {
+    private static final VarHandle NEXT_FREE;
+
+    static {
+        try {
+            NEXT_FREE = MethodHandles.lookup().findVarHandle(RateLimiter.class, "nextFree", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final double permitsPerSecond;
+    private final int burst;
+    /**
+     * 发放一个许可的间隔
+     */
+    private final long intervalNanos;
+    /**
+     * 最多能提前发放的时间，即攒下的burst - 1个许可
+     */
+    private final long burstNanos;
+    /**
+     * 下一个许可的发放时间
+     */
+    private volatile long nextFree;
+
+    /**
+     * 创建限流器，初始时桶是满的
+     *
+     * @param permitsPerSecond 每秒发放的许可数
+     * @param burst            最多攒下的许可数，即允许的突发请求数
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("invalid rate limiter: " + permitsPerSecond + "/s, burst " + burst);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * (burst - 1);
+        this.nextFree = System.nanoTime() - burstNanos;
+    }
+
+    /**
+     * 创建不允许突发的限流器
+     *
+     * @param permitsPerSecond 每秒发放的许可数
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, 1);
+    }
+
+    /**
+     * 尝试获取一个许可，不等待
+     *
+     * @return 是否获取成功
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试获取许可，不等待
+     *
+     * @param permits 许可数
+     * @return 是否获取成功，失败时不占用许可
+     */
+    public boolean tryAcquire(int permits) {
+        for (;;) {
+            long now = System.nanoTime();
+            long next = nextFree;
+            long at = earliest(next, now);
+            if (at - now > 0) {
+                return false;
+            }
+            if (NEXT_FREE.compareAndSet(this, next, at + intervalNanos * permits)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 获取一个许可，许可不足时阻塞当前线程
+     *
+     * @throws PromiseInterruptedException 等待时线程被中断
+     */
+    public void acquire() {
+        acquire(1);
+    }
+
+    /**
+     * 获取许可，许可不足时阻塞当前线程
+     *
+     * @param permits 许可数
+     * @throws PromiseInterruptedException 等待时线程被中断，已经预定的许可不会归还
+     */
+    public void acquire(int permits) {
+        long wait = reserve(permits);
+        long deadline = System.nanoTime() + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new PromiseInterruptedException(new InterruptedException());
+            }
+            wait = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * 预定许可，不管是否需要等待都会占用
+     *
+     * @param permits 许可数
+     * @return 还需要等待的时间，单位纳秒，0表示可以立即执行
+     */
+    long reserve(int permits) {
+        for (;;) {
+            long now = System.nanoTime();
+            long next = nextFree;
+            long at = earliest(next, now);
+            if (NEXT_FREE.compareAndSet(this, next, at + intervalNanos * permits)) {
+                return Math.max(0, at - now);
+            }
+        }
+    }
+
+    /**
+     * 计算本次请求最早的发放时间，空闲太久时最多只能用掉攒下的burst个许可
+     *
+     * @param next 下一个许可的发放时间
+     * @param now  当前时间
+     * @return 发放时间
+     */
+    private long earliest(long next, long now) {
+        long floor = now - burstNanos;
+        return next - floor > 0 ? next : floor;
+    }
+
+    /**
+     * 获取每秒发放的许可数
+     *
+     * @return 每秒发放的许可数
+     */
+    public double getRate() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * 获取最多攒下的许可数
+     *
+     * @return 许可数
+     */
+    public int getBurst() {
+        return burst;
+    }
+}
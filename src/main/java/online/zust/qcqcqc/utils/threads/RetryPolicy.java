@@ -0,0 +1,171 @@
+package online.zust.qcqcqc.utils.threads;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * 重试策略
+ * 任务抛出异常后按指数退避等待一段时间再重新执行，等待由共享定时器计时，不占用线程池线程。
+ * 第n次重试前等待 min(initialDelay * multiplier^(n-1), maxDelay)，再按jitter随机缩短，避免大量任务同时重试。
+ * 创建后可以被多个Promise共享，共享之后不要再修改
+ *
+ * @author qcqcqc
+ */
+public class RetryPolicy {
+    private int maxAttempts = 1;
+    private long initialDelayNanos = Duration.ofMillis(100).toNanos();
+    private long maxDelayNanos = Duration.ofSeconds(10).toNanos();
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private long deadlineNanos;
+    private Predicate<Exception> retryable = (e) -> true;
+
+    private RetryPolicy() {
+    }
+
+    /**
+     * 创建重试策略，默认首次等待100ms，每次翻倍，最多等待10s，随机缩短最多一半，所有异常都重试
+     *
+     * @param maxAttempts 最多执行次数，包括第一次
+     * @return RetryPolicy
+     */
+    public static RetryPolicy of(int maxAttempts) {
+        return new RetryPolicy().maxAttempts(maxAttempts);
+    }
+
+    /**
+     * 设置最多执行次数
+     *
+     * @param maxAttempts 最多执行次数，包括第一次
+     * @return RetryPolicy
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * 设置退避时间
+     *
+     * @param initialDelay 第一次重试前的等待时间
+     * @param maxDelay     等待时间上限
+     * @return RetryPolicy
+     */
+    public RetryPolicy backoff(Duration initialDelay, Duration maxDelay) {
+        if (initialDelay.isNegative() || maxDelay.compareTo(initialDelay) < 0) {
+            throw new IllegalArgumentException("invalid backoff: [" + initialDelay + ", " + maxDelay + "]");
+        }
+        this.initialDelayNanos = initialDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        return this;
+    }
+
+    /**
+     * 设置每次重试等待时间的倍数
+     *
+     * @param multiplier 倍数，为1时每次等待相同时间
+     * @return RetryPolicy
+     */
+    public RetryPolicy multiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be at least 1: " + multiplier);
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * 设置随机缩短的比例
+     *
+     * @param jitter 0表示不随机，1表示在[0, 等待时间)之间完全随机
+     * @return RetryPolicy
+     */
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be in [0, 1]: " + jitter);
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * 设置总时长，从第一次执行开始计算，下一次重试会超过总时长时不再重试
+     *
+     * @param deadline 总时长，为null时不限制
+     * @return RetryPolicy
+     */
+    public RetryPolicy deadline(Duration deadline) {
+        this.deadlineNanos = deadline == null ? 0 : deadline.toNanos();
+        return this;
+    }
+
+    /**
+     * 只重试指定类型的异常
+     *
+     * @param types 异常类型，包括子类
+     * @return RetryPolicy
+     */
+    @SafeVarargs
+    public final RetryPolicy retryOn(Class<? extends Exception>... types) {
+        return retryIf((e) -> {
+            for (Class<? extends Exception> type : types) {
+                if (type.isInstance(e)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 只重试满足条件的异常
+     *
+     * @param retryable 条件
+     * @return RetryPolicy
+     */
+    public RetryPolicy retryIf(Predicate<Exception> retryable) {
+        this.retryable = retryable == null ? (e) -> true : retryable;
+        return this;
+    }
+
+    /**
+     * 获取最多执行次数
+     *
+     * @return 最多执行次数，包括第一次
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 计算下一次重试前的等待时间
+     *
+     * @param attempts     已经执行的次数
+     * @param e            本次执行抛出的异常
+     * @param elapsedNanos 从第一次执行开始经过的时间
+     * @return 等待时间，单位纳秒，不再重试时返回-1
+     */
+    long nextDelayNanos(int attempts, Exception e, long elapsedNanos) {
+        if (attempts >= maxAttempts || e instanceof InterruptedException) {
+            return -1;
+        }
+        try {
+            if (!retryable.test(e)) {
+                return -1;
+            }
+        } catch (RuntimeException ex) {
+            // 判断条件本身出错时按不可重试处理，原异常照常交给异常处理
+            return -1;
+        }
+        double base = Math.min(initialDelayNanos * Math.pow(multiplier, attempts - 1), maxDelayNanos);
+        long delay = (long) (base * (1 - jitter * ThreadLocalRandom.current().nextDouble()));
+        if (deadlineNanos > 0 && elapsedNanos + delay >= deadlineNanos) {
+            return -1;
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,91 @@
+package online.zust.qcqcqc.utils.threads;
+
+import java.util.List;
+
+/**
+ * 关闭Promise线程池的结果，由PromiseExecutor.shutdownGracefully()生成
+ *
+ * @author qcqcqc
+ */
+public final class ShutdownReport {
+    private final long elapsedMillis;
+    private final List<String> undrainedExecutors;
+    private final int interruptedCount;
+    private final List<String> cancelledTasks;
+    private final List<String> cancelledWaitingTasks;
+
+    ShutdownReport(long elapsedMillis, List<String> undrainedExecutors, int interruptedCount, List<String> cancelledTasks, List<String> cancelledWaitingTasks) {
+        this.elapsedMillis = elapsedMillis;
+        this.undrainedExecutors = List.copyOf(undrainedExecutors);
+        this.interruptedCount = interruptedCount;
+        this.cancelledTasks = List.copyOf(cancelledTasks);
+        this.cancelledWaitingTasks = List.copyOf(cancelledWaitingTasks);
+    }
+
+    /**
+     * 是否所有任务都在截止时间前执行完
+     *
+     * @return 是否没有丢失任务
+     */
+    public boolean isClean() {
+        return undrainedExecutors.isEmpty() && cancelledWaitingTasks.isEmpty();
+    }
+
+    /**
+     * 关闭耗时
+     *
+     * @return 毫秒
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 截止时间到达时还有任务没执行完的线程池
+     *
+     * @return 线程池名称
+     */
+    public List<String> getUndrainedExecutors() {
+        return undrainedExecutors;
+    }
+
+    /**
+     * 截止时间到达时还在执行、被中断的任务数
+     *
+     * @return 任务数，无法统计的执行器不计入
+     */
+    public int getInterruptedCount() {
+        return interruptedCount;
+    }
+
+    /**
+     * 截止时间到达时还在排队、被取消的任务
+     *
+     * @return 任务描述，Promise任务为Promise@哈希[任务]，其他任务为任务自身的toString
+     */
+    public List<String> getCancelledTasks() {
+        return cancelledTasks;
+    }
+
+    /**
+     * 关闭时还在等待重试退避或限流许可、被取消的任务
+     *
+     * @return 任务描述，格式和getCancelledTasks()相同
+     */
+    public List<String> getCancelledWaitingTasks() {
+        return cancelledWaitingTasks;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport{" +
+                "elapsedMillis=" + elapsedMillis +
+                ", undrainedExecutors=" + undrainedExecutors +
+                ", interruptedCount=" + interruptedCount +
+                ", cancelledCount=" + cancelledTasks.size() +
+                ", cancelledTasks=" + cancelledTasks +
+                ", cancelledWaitingCount=" + cancelledWaitingTasks.size() +
+                ", cancelledWaitingTasks=" + cancelledWaitingTasks +
+                '}';
+    }
+}
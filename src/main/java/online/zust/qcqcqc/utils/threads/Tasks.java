@@ -1,12 +1,39 @@
 package online.zust.qcqcqc.utils.threads;
 
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseInterruptedException;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseTimeoutException;
+import online.zust.qcqcqc.utils.threads.executors.ConcurrencyLimitedExecutor;
 import online.zust.qcqcqc.utils.threads.tasks.*;
+import online.zust.qcqcqc.utils.threads.timer.TimerHandle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterators;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * @author qcqcqc
@@ -17,19 +44,127 @@ public class Tasks {
      *
      * @param <T> 结果类型
      */
-    public static class TaskList<T> {
+    public static class TaskList<T> implements Iterable<T> {
         private final List<Promise<T>> tasks = new ArrayList<>();
         private boolean startedAll = false;
+        /**
+         * 同时在线程池中的任务上限，为null表示不限制
+         */
+        private ConcurrencyLimitedExecutor limiter;
+        private int maxInFlight;
+        /**
+         * 执行任务的线程池，为null时使用任务自己的线程池
+         */
+        private Executor executor;
+        /**
+         * 任务列表启动的任务的优先级，为null时使用任务自己的优先级
+         */
+        private Integer priority;
+        /**
+         * 任务列表启动的任务共用的限流器，为null时使用任务自己的设置
+         */
+        private RateLimiter rateLimiter;
+        /**
+         * 由任务列表启动的任务数
+         */
+        private final LongAdder started = new LongAdder();
+        /**
+         * 已完成的任务数，包括失败和取消的任务
+         */
+        private final AtomicInteger completed = new AtomicInteger();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder canceled = new LongAdder();
+        private final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<>();
+        /**
+         * 按完成顺序记录的任务，第一次按完成顺序迭代时才创建，之后所有迭代器共用
+         */
+        private volatile CompletionLog<T> completionLog;
+        /**
+         * 所有任务完成时由最后一个完成的任务完成，等待全部任务时共用，限时等待超时后不会在任务上留下回调
+         */
+        private volatile Promise<Void> allFinished;
         private static final Logger log = LoggerFactory.getLogger(Tasks.class);
 
+        /**
+         * 限制同时提交到线程池的任务数
+         * 超过上限的任务在列表内部排队，前面的任务完成后再提交，不会阻塞提交线程；
+         * 上限不超过线程池最大线程数加队列容量时，也不会挤满线程池队列触发拒绝策略
+         * 需要在开始任务之前设置
+         *
+         * @param maxInFlight 同时在线程池中的任务上限，小于等于0表示不限制
+         * @return 任务列表
+         */
+        public TaskList<T> setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            resetLimiter();
+            return this;
+        }
+
+        /**
+         * 指定执行任务的线程池，需要在开始任务之前设置
+         *
+         * @param executor 线程池
+         * @return 任务列表
+         */
+        public TaskList<T> on(Executor executor) {
+            this.executor = executor;
+            resetLimiter();
+            return this;
+        }
+
+        /**
+         * 指定执行任务的命名线程池，需要在开始任务之前设置
+         *
+         * @param executorName promise.executors下配置的线程池名称
+         * @return 任务列表
+         */
+        public TaskList<T> on(String executorName) {
+            return on(PromiseExecutor.getExecutor(executorName));
+        }
+
+        /**
+         * 设置任务列表启动的任务的优先级，只在队列类型为priority的线程池中生效
+         *
+         * @param priority 优先级，越大越先执行
+         * @return 任务列表
+         */
+        public TaskList<T> priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * 设置任务列表启动的任务共用的限流器，需要在开始任务之前设置
+         * 等待许可的任务挂在定时器上，不占用线程池线程，任务按限流器的速率依次提交
+         *
+         * @param rateLimiter 限流器
+         * @return 任务列表
+         */
+        public TaskList<T> limit(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        private void resetLimiter() {
+            limiter = maxInFlight > 0
+                    ? new ConcurrencyLimitedExecutor(executor != null ? executor : PromiseExecutor.getPromiseExecutor(), maxInFlight)
+                    : null;
+        }
+
         /**
          * 添加任务
+         * 设置了并发上限且任务列表已经开始时，新任务会直接进入排队
          *
          * @param task 任务
          * @return 任务列表
          */
         public TaskList<T> add(Promise<T> task) {
             tasks.add(task);
+            // 先于其他回调注册，后面注册的回调执行时计数已经更新
+            task.addCompletion(new FinishHook(task));
+            if (startedAll && limiter != null) {
+                start(task);
+            }
             return this;
         }
 
@@ -40,8 +175,7 @@ public class Tasks {
          * @return 任务列表
          */
         public TaskList<T> add(Callable<T> callable) {
-            tasks.add(Promise.resolve(callable));
-            return this;
+            return add(Promise.resolve(callable));
         }
 
         /**
@@ -54,25 +188,203 @@ public class Tasks {
             if (!startedAll) {
                 for (Promise<T> tPromise : tasks) {
                     if (!tPromise.isDone()) {
-                        tPromise.startAsync();
+                        start(tPromise);
                     }
                 }
             }
             startedAll = true;
+            allFinished().waitForResult();
             for (Promise<T> promise : tasks) {
-                results.add(promise.waitForResult());
+                results.add(promise.getResult());
             }
             return results;
         }
 
+        /**
+         * 限时等待所有任务完成
+         *
+         * @param timeout 最长等待时间，所有任务共用同一个截止时间
+         * @return 结果列表
+         * @throws PromiseTimeoutException 截止时间到达时仍有任务未完成
+         */
+        public List<T> awaitAll(Duration timeout) {
+            if (!startedAll) {
+                startAllAsync();
+            }
+            allFinished().waitForResult(timeout);
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Promise<T> promise : tasks) {
+                results.add(promise.getResult());
+            }
+            return results;
+        }
+
+        /**
+         * 获取所有任务完成时完成的Promise
+         * 已经完成后又添加了未完成的任务时重新创建，同一时间只有一个未完成的，反复限时等待不会累积回调
+         *
+         * @return Promise
+         */
+        private Promise<Void> allFinished() {
+            Promise<Void> current = allFinished;
+            if (current != null && (!current.isDone() || completed.get() >= tasks.size())) {
+                return current;
+            }
+            synchronized (this) {
+                current = allFinished;
+                if (current == null || (current.isDone() && completed.get() < tasks.size())) {
+                    current = Promise.deferred(null);
+                    allFinished = current;
+                    // 先发布再检查计数，和最后一个完成的任务同时检查时至少有一方会完成它
+                    if (completed.get() >= tasks.size()) {
+                        current.complete(null);
+                    }
+                }
+            }
+            return current;
+        }
+
         /**
          * 开始所有任务
          */
         public void startAllAsync() {
-            tasks.forEach(Promise::startAsync);
+            tasks.forEach(this::start);
             startedAll = true;
         }
 
+        /**
+         * 启动还没有开始的任务，只有真正由这次调用启动时才计入已启动任务数
+         *
+         * @param task 任务
+         */
+        private void start(Promise<T> task) {
+            if (task.getStatus() != PromiseStatus.PENDING) {
+                return;
+            }
+            if (priority != null) {
+                task.priority(priority);
+            }
+            if (rateLimiter != null) {
+                task.limit(rateLimiter);
+            }
+            boolean startedNow;
+            if (limiter != null) {
+                startedNow = task.startAsync(limiter);
+            } else if (executor != null) {
+                startedNow = task.startAsync(executor);
+            } else {
+                startedNow = task.tryStartAsync();
+            }
+            if (startedNow) {
+                started.increment();
+            }
+        }
+
+        /**
+         * 按完成顺序迭代任务结果，还没有开始的任务会被启动
+         * next()会阻塞到下一个任务完成，失败或取消的任务结果为null
+         *
+         * @return 迭代器
+         * @throws PromiseInterruptedException 等待时线程被中断
+         */
+        @Override
+        public Iterator<T> iterator() {
+            int total = tasks.size();
+            CompletionLog<T> finishedInOrder = completionLog();
+            if (!startedAll) {
+                startAllAsync();
+            }
+            return new Iterator<>() {
+                private int consumed = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return consumed < total;
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Promise<T> promise = finishedInOrder.await(consumed);
+                    consumed++;
+                    return promise.getResult();
+                }
+            };
+        }
+
+        /**
+         * 获取完成顺序记录，第一次调用时创建
+         * 之后完成的任务由FinishHook记录，已经完成的任务在这里补上，不需要给每个任务再注册回调
+         *
+         * @return 完成顺序记录
+         */
+        private CompletionLog<T> completionLog() {
+            CompletionLog<T> current = completionLog;
+            if (current != null) {
+                return current;
+            }
+            synchronized (this) {
+                current = completionLog;
+                if (current == null) {
+                    current = new CompletionLog<>();
+                    completionLog = current;
+                    // 先发布再补录，和FinishHook同时记录同一个任务时由CompletionLog去重
+                    for (Promise<T> task : tasks) {
+                        if (task.isDone()) {
+                            current.add(task);
+                        }
+                    }
+                }
+            }
+            return current;
+        }
+
+        /**
+         * 按完成顺序得到任务结果的流，先完成的任务结果可以先被处理
+         *
+         * @return 结果流
+         */
+        public Stream<T> stream() {
+            return StreamSupport.stream(Spliterators.spliterator(iterator(), tasks.size(), 0), false);
+        }
+
+        /**
+         * 在当前线程上按完成顺序处理每个任务的结果，全部处理完后返回
+         *
+         * @param consumer 结果处理
+         */
+        public void forEachAsCompleted(Consumer<T> consumer) {
+            forEach(consumer);
+        }
+
+        /**
+         * 取消所有还没有完成的任务
+         * 队列中的任务会被移除，正在执行的任务在mayInterruptIfRunning为true时会被中断
+         *
+         * @param mayInterruptIfRunning 是否中断正在执行的任务
+         * @return 本次取消的任务数量
+         */
+        public int cancelAll(boolean mayInterruptIfRunning) {
+            int count = 0;
+            for (Promise<T> task : tasks) {
+                if (task.cancel(mayInterruptIfRunning)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 取消所有还没有完成的任务，并中断正在执行的任务
+         *
+         * @return 本次取消的任务数量
+         */
+        public int cancelAll() {
+            return cancelAll(true);
+        }
+
         /**
          * 等待所有任务完成
          *
@@ -88,34 +400,156 @@ public class Tasks {
          * @return 未完成任务数量
          */
         public int getUnfinishedTaskCount() {
-            int count = 0;
-            for (Promise<T> task : tasks) {
-                if (!task.isDone()) {
-                    count++;
+            return tasks.size() - completed.get();
+        }
+
+        /**
+         * 获取已完成任务数量，包括失败和取消的任务
+         *
+         * @return 已完成任务数量
+         */
+        public int getFinishedTaskCount() {
+            return completed.get();
+        }
+
+        /**
+         * 获取由任务列表启动的任务数量
+         *
+         * @return 已启动任务数量
+         */
+        public long getStartedTaskCount() {
+            return started.sum();
+        }
+
+        /**
+         * 获取失败的任务数量
+         *
+         * @return 失败任务数量
+         */
+        public long getFailedTaskCount() {
+            return failed.sum();
+        }
+
+        /**
+         * 获取被取消的任务数量
+         *
+         * @return 取消任务数量
+         */
+        public long getCanceledTaskCount() {
+            return canceled.sum();
+        }
+
+        /**
+         * 任务完成时更新计数，每个任务只分配这一个对象
+         */
+        private final class FinishHook extends Promise.Completion {
+            private final Promise<T> task;
+
+            private FinishHook(Promise<T> task) {
+                this.task = task;
+            }
+
+            @Override
+            void fire() {
+                try {
+                    onTaskFinish(task);
+                } catch (RuntimeException e) {
+                    log.error(e.getMessage());
                 }
             }
-            return count;
         }
 
         /**
-         * 等待所有任务完成
+         * 按完成顺序记录的任务，每个迭代器各自记录读到的位置，互不影响
+         *
+         * @param <T> 结果类型
          */
-        private void awaitAllForDone() {
-            for (Promise<T> promise : tasks) {
-                promise.waitForResult();
+        private static final class CompletionLog<T> {
+            private final List<Promise<T>> finished = new ArrayList<>();
+            private final Set<Promise<T>> recorded = Collections.newSetFromMap(new IdentityHashMap<>());
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition added = lock.newCondition();
+
+            private void add(Promise<T> task) {
+                lock.lock();
+                try {
+                    if (recorded.add(task)) {
+                        finished.add(task);
+                        added.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            /**
+             * 等待第index个完成的任务
+             *
+             * @param index 完成顺序，从0开始
+             * @return 任务
+             * @throws PromiseInterruptedException 等待时线程被中断
+             */
+            private Promise<T> await(int index) {
+                lock.lock();
+                try {
+                    while (finished.size() <= index) {
+                        added.await();
+                    }
+                    return finished.get(index);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PromiseInterruptedException(e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * 单个任务完成时更新计数，并按节流条件通知进度
+         *
+         * @param task 任务
+         */
+        private void onTaskFinish(Promise<T> task) {
+            PromiseStatus status = task.getStatus();
+            if (status == PromiseStatus.REJECTED) {
+                failed.increment();
+            } else if (status == PromiseStatus.CANCELED) {
+                canceled.increment();
+            }
+            CompletionLog<T> finishedInOrder = completionLog;
+            if (finishedInOrder != null) {
+                finishedInOrder.add(task);
+            }
+            int done = completed.incrementAndGet();
+            Promise<Void> all = allFinished;
+            if (all != null && done >= tasks.size()) {
+                all.complete(null);
+            }
+            if (progressListeners.isEmpty()) {
+                return;
+            }
+            int total = tasks.size();
+            for (ProgressListener listener : progressListeners) {
+                listener.onFinish(done, total);
             }
         }
 
         /**
          * 添加任务全部完成回调
+         * 任务列表为空或任务已经全部完成时在当前线程立即执行
          *
          * @param task 任务
          */
         public void onTasksFinish(VoidTask task) {
-            Promise.resolve(() -> {
-                this.awaitAllForDone();
-                return null;
-            }).onSucceed((res) -> task.run()).startAsync();
+            // 由最后一个完成的任务触发回调，不占用等待线程
+            Promises.allSettled(tasks).addFinishCallBack(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error(e.getMessage());
+                }
+            });
         }
 
         /**
@@ -142,10 +576,19 @@ public class Tasks {
          * @param task 任务
          */
         public void onShowProgress(ProgressHandler task) {
-            tasks.forEach((promise) -> promise.addFinishCallBack(() -> {
-                // 这里因为当前任务就算已经完成，但是还没有执行回调，所以需要+1
-                task.handle(getTaskCount() - getUnfinishedTaskCount() + 1, getTaskCount());
-            }));
+            onShowProgress(task, 1, 0);
+        }
+
+        /**
+         * 添加节流的进度显示
+         * 每完成everyN个任务，或者距离上次通知超过intervalMillis时通知一次，最后一个任务完成时一定会通知
+         *
+         * @param task           进度处理
+         * @param everyN         每完成多少个任务通知一次，小于等于0表示不按数量通知
+         * @param intervalMillis 两次通知之间的最短间隔，小于等于0表示不按时间通知
+         */
+        public void onShowProgress(ProgressHandler task, int everyN, long intervalMillis) {
+            progressListeners.add(new ProgressListener(task, everyN, intervalMillis));
         }
 
         /**
@@ -156,6 +599,35 @@ public class Tasks {
         }
     }
 
+    /**
+     * 节流的进度监听
+     */
+    private static final class ProgressListener {
+        private final ProgressHandler handler;
+        private final int everyN;
+        private final long intervalNanos;
+        private final AtomicLong lastReport = new AtomicLong(System.nanoTime());
+
+        private ProgressListener(ProgressHandler handler, int everyN, long intervalMillis) {
+            this.handler = handler;
+            this.everyN = everyN;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        private void onFinish(int done, int total) {
+            boolean report = done >= total || (everyN > 0 && done % everyN == 0);
+            if (!report && intervalNanos > 0) {
+                long last = lastReport.get();
+                long now = System.nanoTime();
+                // 同一时间段内只有一个线程能抢到通知
+                report = now - last >= intervalNanos && lastReport.compareAndSet(last, now);
+            }
+            if (report) {
+                handler.handle(done, total);
+            }
+        }
+    }
+
     /**
      * 创建任务列表
      *
@@ -166,6 +638,28 @@ public class Tasks {
         return new TaskList<>();
     }
 
+    /**
+     * 创建限制同时在线程池中任务数的任务列表
+     *
+     * @param maxInFlight 同时在线程池中的任务上限，小于等于0表示不限制
+     * @param <T>         结果类型
+     * @return 任务列表
+     */
+    public static <T> TaskList<T> createTaskList(int maxInFlight) {
+        return new TaskList<T>().setMaxInFlight(maxInFlight);
+    }
+
+    /**
+     * 创建在指定线程池中执行的任务列表
+     *
+     * @param executor 线程池
+     * @param <T>      结果类型
+     * @return 任务列表
+     */
+    public static <T> TaskList<T> createTaskList(Executor executor) {
+        return new TaskList<T>().on(executor);
+    }
+
     /**
      * 等待所有任务完成
      *
@@ -180,8 +674,10 @@ public class Tasks {
                 tPromise.startAsync();
             }
         }
+        // 只在组合Promise上等待一次，而不是逐个等待
+        Promises.allSettled(promises).waitForResult();
         for (Promise<T> promise : promises) {
-            results.add(promise.waitForResult());
+            results.add(promise.getResult());
         }
         return results;
     }
@@ -197,9 +693,9 @@ public class Tasks {
         for (Promise<?> promise : promises) {
             promise.startAsync();
         }
+        Promises.allSettled(promises).waitForResult();
         for (Promise<?> promise : promises) {
-            Object await = promise.await();
-            results.add(await);
+            results.add(promise.getResult());
         }
         return results;
     }
@@ -215,23 +711,58 @@ public class Tasks {
                 promise.startAsync();
             }
         }
-        for (Promise<?> promise : promises) {
-            promise.waitFinish();
-        }
+        Promises.allSettled(promises).waitForResult();
     }
 
     /**
      * 设置定时任务
+     * 启动返回的Promise后开始计时，计时期间不占用线程池线程，到期后任务交给线程池执行
      *
      * @param task    任务
-     * @param timeout 超时时间
+     * @param timeout 超时时间，单位毫秒
      * @return Promise
      */
     public static Promise<?> setTimeout(VoidTask task, long timeout) {
-        return Promise.resolve(() -> {
-            Thread.sleep(timeout);
+        return Promises.delay(Duration.ofMillis(timeout)).thenCompose((res) -> Promise.resolve(() -> {
+            task.run();
             return null;
-        }).onSucceed((res) -> task.run());
+        }));
+    }
+
+    /**
+     * 设置周期任务，按固定频率执行，首次在一个周期后执行
+     *
+     * @param task     任务
+     * @param interval 周期，单位毫秒
+     * @return 周期任务句柄，调用cancel()停止
+     */
+    public static TimerHandle setInterval(VoidTask task, long interval) {
+        return scheduleAtFixedRate(task, interval, interval);
+    }
+
+    /**
+     * 按固定频率周期执行，每次到期后任务交给线程池执行
+     * 同一个任务不会并发执行，执行时间超过周期时下一次会在本次结束后立即开始
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟，单位毫秒
+     * @param period       周期，单位毫秒
+     * @return 周期任务句柄，调用cancel()停止
+     */
+    public static TimerHandle scheduleAtFixedRate(VoidTask task, long initialDelay, long period) {
+        return PromiseTimer.scheduleAtFixedRate(task::run, initialDelay, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按固定延迟周期执行，每次到期后任务交给线程池执行，执行结束后再延迟指定时间执行下一次
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟，单位毫秒
+     * @param delay        两次执行之间的延迟，单位毫秒
+     * @return 周期任务句柄，调用cancel()停止
+     */
+    public static TimerHandle scheduleWithFixedDelay(VoidTask task, long initialDelay, long delay) {
+        return PromiseTimer.scheduleWithFixedDelay(task::run, initialDelay, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -286,7 +817,54 @@ public class Tasks {
      * @return 任务列表
      */
     public static <T, R> TaskList<R> startWithMultiThreadsAsync(List<T> items, CallBackTask<T, R> task) {
-        TaskList<R> taskList = createTaskList();
+        return startWithMultiThreadsAsync(items, task, 0);
+    }
+
+    /**
+     * 使用多线程执行任务，限制同时在线程池中的任务数
+     * 超过上限的任务在任务列表内部排队，调用线程不会阻塞；上限不超过线程池最大线程数加队列容量时，也不会因为线程池队列已满而代为执行任务
+     *
+     * @param items       任务列表
+     * @param task        任务
+     * @param maxInFlight 同时在线程池中的任务上限，小于等于0表示不限制
+     * @param <T>         任务类型
+     * @param <R>         结果类型
+     * @return 任务列表
+     */
+    public static <T, R> TaskList<R> startWithMultiThreadsAsync(List<T> items, CallBackTask<T, R> task, int maxInFlight) {
+        return startWithMultiThreadsAsync(items, task, new TaskList<R>().setMaxInFlight(maxInFlight));
+    }
+
+    /**
+     * 在命名线程池中使用多线程执行任务
+     *
+     * @param items        任务列表
+     * @param task         任务
+     * @param executorName promise.executors下配置的线程池名称
+     * @param <T>          任务类型
+     * @param <R>          结果类型
+     * @return 任务列表
+     */
+    public static <T, R> TaskList<R> startWithMultiThreadsAsync(List<T> items, CallBackTask<T, R> task, String executorName) {
+        return startWithMultiThreadsAsync(items, task, new TaskList<R>().on(executorName));
+    }
+
+    /**
+     * 按限流器的速率使用多线程执行任务
+     * 等待许可的任务挂在定时器上，不占用线程池线程
+     *
+     * @param items       任务列表
+     * @param task        任务
+     * @param rateLimiter 限流器，可以和其他任务共享
+     * @param <T>         任务类型
+     * @param <R>         结果类型
+     * @return 任务列表
+     */
+    public static <T, R> TaskList<R> startWithMultiThreadsAsync(List<T> items, CallBackTask<T, R> task, RateLimiter rateLimiter) {
+        return startWithMultiThreadsAsync(items, task, new TaskList<R>().limit(rateLimiter));
+    }
+
+    private static <T, R> TaskList<R> startWithMultiThreadsAsync(List<T> items, CallBackTask<T, R> task, TaskList<R> taskList) {
         for (T item : items) {
             taskList.add(Promise.resolve(() -> task.execute(item)));
         }
@@ -326,12 +904,49 @@ public class Tasks {
      * @return 任务列表
      */
     public static <T, R> List<R> startWithMultiThreadsSync(List<T> items, CallBackTask<T, R> task) {
-        TaskList<R> taskList = createTaskList();
-        for (T item : items) {
-            taskList.add(Promise.resolve(() -> task.execute(item)));
-        }
-        taskList.startAllAsync();
-        return taskList.awaitAll();
+        return startWithMultiThreadsSync(items, task, 0);
+    }
+
+    /**
+     * 使用多线程执行任务，限制同时在线程池中的任务数
+     *
+     * @param items       任务列表
+     * @param task        任务
+     * @param maxInFlight 同时在线程池中的任务上限，小于等于0表示不限制
+     * @param <T>         任务类型
+     * @param <R>         结果类型
+     * @return 结果列表
+     */
+    public static <T, R> List<R> startWithMultiThreadsSync(List<T> items, CallBackTask<T, R> task, int maxInFlight) {
+        return startWithMultiThreadsAsync(items, task, maxInFlight).awaitAll();
+    }
+
+    /**
+     * 在命名线程池中使用多线程执行任务，并等待所有任务完成
+     *
+     * @param items        任务列表
+     * @param task         任务
+     * @param executorName promise.executors下配置的线程池名称
+     * @param <T>          任务类型
+     * @param <R>          结果类型
+     * @return 结果列表
+     */
+    public static <T, R> List<R> startWithMultiThreadsSync(List<T> items, CallBackTask<T, R> task, String executorName) {
+        return startWithMultiThreadsAsync(items, task, executorName).awaitAll();
+    }
+
+    /**
+     * 按限流器的速率使用多线程执行任务，并等待所有任务完成
+     *
+     * @param items       任务列表
+     * @param task        任务
+     * @param rateLimiter 限流器，可以和其他任务共享
+     * @param <T>         任务类型
+     * @param <R>         结果类型
+     * @return 结果列表
+     */
+    public static <T, R> List<R> startWithMultiThreadsSync(List<T> items, CallBackTask<T, R> task, RateLimiter rateLimiter) {
+        return startWithMultiThreadsAsync(items, task, rateLimiter).awaitAll();
     }
 
     /**
@@ -355,4 +970,107 @@ public class Tasks {
         taskList.startAllAsync();
         return taskList.awaitAll();
     }
+
+    /**
+     * 分块执行任务，适合元素很多而单个元素耗时很短的场景
+     * 不会为每个元素创建一个Promise，而是按测得的单个元素耗时把列表切成少量的块，每块作为一个任务执行，结果顺序和输入一致
+     * 单个元素抛出异常时只记录日志，对应结果为null
+     *
+     * @param items 任务列表
+     * @param task  任务
+     * @param <T>   任务类型
+     * @param <R>   结果类型
+     * @return 结果列表
+     */
+    public static <T, R> List<R> startWithChunksSync(List<T> items, CallBackTask<T, R> task) {
+        return ChunkedExecution.of(items, task, null, false).startSync();
+    }
+
+    /**
+     * 分块执行任务，适合元素很多而单个元素耗时很短的场景
+     *
+     * @param items               任务列表
+     * @param task                任务
+     * @param exceptionHandleTask 单个元素的异常处理任务，返回值作为该元素的结果
+     * @param <T>                 任务类型
+     * @param <R>                 结果类型
+     * @return 结果列表
+     */
+    public static <T, R> List<R> startWithChunksSync(List<T> items, CallBackTask<T, R> task, ExceptionHandleTask<R> exceptionHandleTask) {
+        return ChunkedExecution.of(items, task, exceptionHandleTask, false).startSync();
+    }
+
+    /**
+     * 异步分块执行任务，采样和切块也在线程池中进行
+     *
+     * @param items 任务列表
+     * @param task  任务
+     * @param <T>   任务类型
+     * @param <R>   结果类型
+     * @return 已启动的Promise，完成时得到结果列表
+     */
+    public static <T, R> Promise<List<R>> startWithChunksAsync(List<T> items, CallBackTask<T, R> task) {
+        return startWithChunksAsync(items, task, null);
+    }
+
+    /**
+     * 异步分块执行任务，采样和切块也在线程池中进行
+     *
+     * @param items               任务列表
+     * @param task                任务
+     * @param exceptionHandleTask 单个元素的异常处理任务，返回值作为该元素的结果
+     * @param <T>                 任务类型
+     * @param <R>                 结果类型
+     * @return 已启动的Promise，完成时得到结果列表
+     */
+    public static <T, R> Promise<List<R>> startWithChunksAsync(List<T> items, CallBackTask<T, R> task, ExceptionHandleTask<R> exceptionHandleTask) {
+        Promise<List<R>> promise = ChunkedExecution.of(items, task, exceptionHandleTask, true);
+        promise.startAsync();
+        return promise;
+    }
+
+    /**
+     * 在分治任务线程池中执行ForkJoinTask
+     * 任务内部应当用fork/join等待子任务，而不是在Promise线程池中等待子Promise，否则父任务阻塞会占满线程池
+     *
+     * @param task 任务
+     * @param <R>  结果类型
+     * @return 已启动的Promise，取消它会取消任务
+     */
+    public static <R> Promise<R> forkJoin(ForkJoinTask<R> task) {
+        Promise<R> promise = Promise.deferred((self) -> PromiseExecutor.getForkJoinPool().execute(() -> {
+            try {
+                self.complete(task.invoke());
+            } catch (Exception e) {
+                self.completeExceptionally(e);
+            } catch (Error e) {
+                self.completeExceptionally(new RuntimeException(e));
+                throw e;
+            }
+        }));
+        promise.addFinishCallBack(() -> {
+            if (promise.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        promise.startAsync();
+        return promise;
+    }
+
+    /**
+     * 分治执行
+     * 问题足够小时直接求解，否则拆分成子问题并行求解，再把子结果按顺序两两合并
+     *
+     * @param problem 问题
+     * @param isSmall 问题是否足够小，可以直接求解
+     * @param solve   直接求解
+     * @param split   拆分问题，返回空列表时直接求解
+     * @param merge   合并两个相邻子问题的结果，需要满足结合律
+     * @param <P>     问题类型
+     * @param <R>     结果类型
+     * @return 已启动的Promise
+     */
+    public static <P, R> Promise<R> divideAndConquer(P problem, Predicate<P> isSmall, CallBackTask<P, R> solve, Function<P, List<P>> split, BinaryOperator<R> merge) {
+        return forkJoin(new DivideAndConquerTask<>(problem, isSmall, solve, split, merge));
+    }
 }
@@ -0,0 +1,21 @@
+package online.zust.qcqcqc.utils.threads.enums;
+
+/**
+ * 熔断器状态
+ *
+ * @author qcqcqc
+ */
+public enum CircuitState {
+    /**
+     * 关闭，正常放行并统计失败率
+     */
+    CLOSED,
+    /**
+     * 打开，直接拒绝，到期后进入半开
+     */
+    OPEN,
+    /**
+     * 半开，只放行少量探测调用，探测全部成功后关闭，任一失败重新打开
+     */
+    HALF_OPEN
+}
@@ -20,7 +20,11 @@ public enum PromiseStatus {
     /**
      * 已取消
      */
-    CANCELED(3, "CANCELED");
+    CANCELED(3, "CANCELED"),
+    /**
+     * 执行中
+     */
+    RUNNING(4, "RUNNING");
 
     /**
      * 状态码
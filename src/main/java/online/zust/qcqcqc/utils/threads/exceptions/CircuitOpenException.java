@@ -0,0 +1,18 @@
+package online.zust.qcqcqc.utils.threads.exceptions;
+
+import java.io.Serial;
+
+/**
+ * 熔断器打开，调用被直接拒绝
+ * 熔断期间会被频繁创建，不填充堆栈
+ *
+ * @author qcqcqc
+ */
+public class CircuitOpenException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = -6180243307946612513L;
+
+    public CircuitOpenException(String message) {
+        super(message, null, false, false);
+    }
+}
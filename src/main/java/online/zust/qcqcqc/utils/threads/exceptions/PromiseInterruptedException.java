@@ -0,0 +1,18 @@
+package online.zust.qcqcqc.utils.threads.exceptions;
+
+import java.io.Serial;
+
+/**
+ * 等待Promise时线程被中断
+ * 抛出前会恢复线程的中断标记
+ *
+ * @author qcqcqc
+ */
+public class PromiseInterruptedException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = -2416350712395981627L;
+
+    public PromiseInterruptedException(InterruptedException cause) {
+        super("Interrupted while waiting for promise", cause);
+    }
+}
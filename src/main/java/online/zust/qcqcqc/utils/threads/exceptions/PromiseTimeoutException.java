@@ -0,0 +1,17 @@
+package online.zust.qcqcqc.utils.threads.exceptions;
+
+import java.io.Serial;
+
+/**
+ * Promise等待超时
+ *
+ * @author qcqcqc
+ */
+public class PromiseTimeoutException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 3871526907134250968L;
+
+    public PromiseTimeoutException(String message) {
+        super(message);
+    }
+}
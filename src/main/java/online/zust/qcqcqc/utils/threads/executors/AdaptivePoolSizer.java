@@ -0,0 +1,323 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import online.zust.qcqcqc.utils.threads.timer.HashedWheelTimer;
+import online.zust.qcqcqc.utils.threads.timer.TimerHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池自适应调整
+ * <p>
+ * 定时采样线程池的活跃线程数、队列长度和完成任务数，不在任务上做任何埋点。每个调整周期用利特尔法则估算：
+ * 吞吐量X = 完成任务数 / 周期，服务时间S = 平均活跃线程数 / X，排队时间W = 平均队列长度 / X。
+ * 排队时间占服务时间的比例超过阈值且线程基本都忙时按比例扩容（最多翻倍）；
+ * 扩容后吞吐量没有明显提升说明已经到了瓶颈（比如CPU打满），回退到扩容前的大小；
+ * 利用率持续偏低时逐步缩容。核心线程数始终在[minPoolSize, maxPoolSize]之间。
+ *
+ * @author qcqcqc
+ */
+public class AdaptivePoolSizer {
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+    /**
+     * 每个调整周期的采样次数
+     */
+    private static final int SAMPLES_PER_INTERVAL = 10;
+    /**
+     * 排队时间超过服务时间的这个比例时扩容
+     */
+    private static final double QUEUEING_THRESHOLD = 0.1;
+    /**
+     * 扩容后吞吐量至少要提升这个比例，否则回退
+     */
+    private static final double MIN_GAIN = 1.05;
+    /**
+     * 利用率低于这个值时缩容
+     */
+    private static final double SHRINK_UTILIZATION = 0.5;
+    /**
+     * 扩容被回退后，这么多个周期内不再扩容
+     */
+    private static final int GROW_COOLDOWN_INTERVALS = 5;
+    /**
+     * 所有调整器共用的时间轮，没有调整器运行时工作线程挂起
+     * 采样和调整都很轻量，直接在时间轮线程中执行，线程池再忙也不会延迟调整
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer("promise-pool-sizer", 10, TimeUnit.MILLISECONDS, 512, null);
+
+    private final Executor executor;
+    private volatile int minPoolSize;
+    private volatile int maxPoolSize;
+    private final long intervalMillis;
+    private TimerHandle handle;
+
+    private int samples;
+    private long busySum;
+    private long queuedSum;
+    private long lastCompleted;
+    /**
+     * 上次扩容前的核心线程数和吞吐量，为0表示上个周期没有扩容
+     */
+    private int sizeBeforeGrow;
+    private double throughputBeforeGrow;
+    private int growCooldown;
+    /**
+     * 扩容时被调大之前的最大线程数，缩容时收回；为0表示最大线程数没有被调大过
+     */
+    private int maxBeforeRaise;
+
+    private volatile double throughput;
+    private volatile double serviceTimeMillis;
+    private volatile double queueWaitMillis;
+
+    /**
+     * 创建自适应调整器
+     *
+     * @param executor       线程池，支持ThreadPoolTaskExecutor和ThreadPoolExecutor
+     * @param minPoolSize    最小核心线程数
+     * @param maxPoolSize    最大核心线程数
+     * @param intervalMillis 调整周期，单位毫秒
+     */
+    public AdaptivePoolSizer(Executor executor, int minPoolSize, int maxPoolSize, long intervalMillis) {
+        checkBounds(minPoolSize, maxPoolSize);
+        if (intervalMillis < SAMPLES_PER_INTERVAL) {
+            throw new IllegalArgumentException("intervalMillis must be at least " + SAMPLES_PER_INTERVAL + ": " + intervalMillis);
+        }
+        if (threadPool(executor) == null) {
+            throw new IllegalArgumentException("executor is not a thread pool: " + executor);
+        }
+        this.executor = executor;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    private static void checkBounds(int minPoolSize, int maxPoolSize) {
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize) {
+            throw new IllegalArgumentException("invalid pool size bounds: [" + minPoolSize + ", " + maxPoolSize + "]");
+        }
+    }
+
+    /**
+     * 调整核心线程数的上下限，下个调整周期生效，当前核心线程数超出范围时会被调整到范围内
+     * 和调整周期并发修改时，两个边界可能短暂地一新一旧，这时以下限为准
+     *
+     * @param minPoolSize 最小核心线程数
+     * @param maxPoolSize 最大核心线程数
+     */
+    public synchronized void setBounds(int minPoolSize, int maxPoolSize) {
+        checkBounds(minPoolSize, maxPoolSize);
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        log.info("adaptive pool sizing bounds changed: [{}, {}]", minPoolSize, maxPoolSize);
+    }
+
+    /**
+     * 获取最小核心线程数
+     *
+     * @return 最小核心线程数
+     */
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    /**
+     * 获取最大核心线程数
+     *
+     * @return 最大核心线程数
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * 开始自适应调整
+     */
+    public synchronized void start() {
+        if (handle != null) {
+            return;
+        }
+        lastCompleted = threadPool(executor).getCompletedTaskCount();
+        long sampleMillis = intervalMillis / SAMPLES_PER_INTERVAL;
+        handle = TIMER.scheduleAtFixedRate(this::sample, sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+        log.info("adaptive pool sizing started, bounds: [{}, {}], interval: {}ms", minPoolSize, maxPoolSize, intervalMillis);
+    }
+
+    /**
+     * 停止自适应调整，线程池保持当前大小
+     */
+    public synchronized void stop() {
+        if (handle != null) {
+            handle.cancel();
+            handle = null;
+        }
+    }
+
+    private void sample() {
+        ThreadPoolExecutor pool = threadPool(executor);
+        if (pool == null || pool.isShutdown()) {
+            return;
+        }
+        busySum += pool.getActiveCount();
+        queuedSum += pool.getQueue().size();
+        if (++samples < SAMPLES_PER_INTERVAL) {
+            return;
+        }
+        long completed = pool.getCompletedTaskCount();
+        double seconds = intervalMillis / 1000.0;
+        double busy = (double) busySum / samples;
+        double queued = (double) queuedSum / samples;
+        long done = completed - lastCompleted;
+        lastCompleted = completed;
+        samples = 0;
+        busySum = 0;
+        queuedSum = 0;
+        try {
+            adjust(pool.getCorePoolSize(), busy, queued, done / seconds);
+        } catch (RuntimeException e) {
+            log.error("adaptive pool sizing failed", e);
+        }
+    }
+
+    /**
+     * 根据一个周期的统计结果调整核心线程数
+     *
+     * @param core   当前核心线程数
+     * @param busy   平均活跃线程数
+     * @param queued 平均队列长度
+     * @param x      吞吐量，每秒完成的任务数
+     */
+    private void adjust(int core, double busy, double queued, double x) {
+        throughput = x;
+        serviceTimeMillis = x > 0 ? busy / x * 1000 : 0;
+        queueWaitMillis = x > 0 ? queued / x * 1000 : 0;
+        int target = core;
+        if (sizeBeforeGrow > 0) {
+            // 上个周期扩容过，吞吐量没有提升就回退
+            if (x < throughputBeforeGrow * MIN_GAIN) {
+                target = sizeBeforeGrow;
+                growCooldown = GROW_COOLDOWN_INTERVALS;
+            }
+            sizeBeforeGrow = 0;
+        } else if (growCooldown > 0) {
+            growCooldown--;
+        } else if (queued > 0 && busy >= core * 0.9) {
+            double ratio;
+            if (x == 0) {
+                // 一个周期内一个任务都没完成，只能说明任务很慢，按最大步长扩容
+                ratio = 2;
+            } else {
+                double s = busy / x;
+                double w = queued / x;
+                ratio = w > s * QUEUEING_THRESHOLD ? Math.min(2, (s + w) / s) : 1;
+            }
+            target = (int) Math.ceil(core * ratio);
+            if (target > core) {
+                sizeBeforeGrow = core;
+                throughputBeforeGrow = x;
+            }
+        } else if (busy < core * SHRINK_UTILIZATION) {
+            // 每次最多缩掉一半的多余线程，避免负载抖动时大起大落
+            int needed = (int) Math.ceil(busy / SHRINK_UTILIZATION);
+            target = core - Math.max(1, (core - needed) / 2);
+        }
+        int min = minPoolSize;
+        int max = maxPoolSize;
+        target = Math.max(min, Math.min(max, target));
+        if (target == core) {
+            return;
+        }
+        if (target > core) {
+            // 先调大最大线程数，避免核心线程数大于最大线程数
+            int currentMax = maxPoolSize(executor);
+            if (target > currentMax) {
+                if (maxBeforeRaise == 0) {
+                    maxBeforeRaise = currentMax;
+                }
+                setMaxPoolSize(target);
+            }
+            setCorePoolSize(target);
+        } else {
+            setCorePoolSize(target);
+            if (maxBeforeRaise > 0) {
+                // 扩容时调大的最大线程数随缩容收回，但不低于原来的值
+                setMaxPoolSize(Math.max(target, maxBeforeRaise));
+                if (target <= maxBeforeRaise) {
+                    maxBeforeRaise = 0;
+                }
+            }
+        }
+        log.debug("promise pool core size {} -> {}, throughput: {}/s, service: {}ms, queue wait: {}ms",
+                core, target, Math.round(x), Math.round(serviceTimeMillis), Math.round(queueWaitMillis));
+    }
+
+    private void setCorePoolSize(int size) {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            ((ThreadPoolTaskExecutor) executor).setCorePoolSize(size);
+        } else {
+            threadPool(executor).setCorePoolSize(size);
+        }
+    }
+
+    private void setMaxPoolSize(int size) {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            ((ThreadPoolTaskExecutor) executor).setMaxPoolSize(size);
+        } else {
+            threadPool(executor).setMaximumPoolSize(size);
+        }
+    }
+
+    private static int maxPoolSize(Executor executor) {
+        return threadPool(executor).getMaximumPoolSize();
+    }
+
+    private static ThreadPoolExecutor threadPool(Executor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            return ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor();
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            return (ThreadPoolExecutor) executor;
+        }
+        return null;
+    }
+
+    /**
+     * 获取当前核心线程数
+     *
+     * @return 核心线程数
+     */
+    public int getCorePoolSize() {
+        return threadPool(executor).getCorePoolSize();
+    }
+
+    /**
+     * 获取上个周期的吞吐量
+     *
+     * @return 每秒完成的任务数
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 获取上个周期估算的平均服务时间
+     *
+     * @return 毫秒
+     */
+    public double getServiceTimeMillis() {
+        return serviceTimeMillis;
+    }
+
+    /**
+     * 获取上个周期估算的平均排队时间
+     *
+     * @return 毫秒
+     */
+    public double getQueueWaitMillis() {
+        return queueWaitMillis;
+    }
+}
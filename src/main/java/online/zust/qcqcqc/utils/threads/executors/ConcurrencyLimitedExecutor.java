@@ -0,0 +1,274 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 限制并发数的执行器
+ * 超过并发上限的任务在内部无锁队列中排队，等正在执行的任务结束后再交给底层执行器，提交任务不会阻塞调用线程。
+ * 并发上限不超过底层线程池的最大线程数加队列容量时，底层线程池不会因为队列已满而触发拒绝策略；
+ * 超过时仍然按底层线程池的拒绝策略处理，例如caller-runs会在提交线程或刚结束任务的工作线程中执行。
+ * 底层执行器拒绝的任务是Future时会被取消，异常不会抛给提交其他任务的调用方或工作线程
+ *
+ * @author qcqcqc
+ */
+public class ConcurrencyLimitedExecutor implements Executor {
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitedExecutor.class);
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile boolean shutdown;
+    /**
+     * 关闭后所有任务结束时释放
+     */
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    /**
+     * 创建限制并发数的执行器
+     *
+     * @param delegate       底层执行器
+     * @param maxConcurrency 最大并发数
+     */
+    public ConcurrencyLimitedExecutor(Executor delegate, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0: " + maxConcurrency);
+        }
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        pending.add(command);
+        drain();
+    }
+
+    /**
+     * 在并发上限内把排队的任务交给底层执行器
+     */
+    private void drain() {
+        for (; ; ) {
+            int current = active.get();
+            if (current >= maxConcurrency) {
+                return;
+            }
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable next = pending.poll();
+            if (next == null) {
+                active.decrementAndGet();
+                // 释放名额后可能有新任务入队，需要再检查一次
+                if (pending.isEmpty()) {
+                    tryTerminate();
+                    return;
+                }
+                continue;
+            }
+            try {
+                delegate.execute(new LimitedTask(next));
+            } catch (RuntimeException e) {
+                // 被拒绝的不一定是当前调用方提交的任务，取消它而不是把异常抛给调用方或工作线程
+                active.decrementAndGet();
+                reject(next, e);
+            }
+        }
+    }
+
+    /**
+     * 已经关闭且没有排队和执行中的任务时释放等待者
+     * 先看队列再看名额：任务出队前已经占用了名额，看到队列为空时不会漏掉刚出队的任务
+     */
+    private void tryTerminate() {
+        if (shutdown && pending.isEmpty() && active.get() == 0) {
+            terminated.countDown();
+        }
+    }
+
+    /**
+     * 处理被底层执行器拒绝的任务，是Future时取消，否则只能记录后丢弃
+     *
+     * @param task 任务
+     * @param e    拒绝时的异常
+     */
+    private static void reject(Runnable task, RuntimeException e) {
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+            return;
+        }
+        log.error(e.getMessage());
+    }
+
+    /**
+     * 包装后交给底层执行器的任务，结束时释放名额，并保留原任务的优先级
+     */
+    private final class LimitedTask implements Runnable, PrioritizedTask {
+        private final Runnable task;
+
+        private LimitedTask(Runnable task) {
+            this.task = task;
+        }
+
+        private ConcurrencyLimitedExecutor owner() {
+            return ConcurrencyLimitedExecutor.this;
+        }
+
+        @Override
+        public int getPriority() {
+            return task instanceof PrioritizedTask ? ((PrioritizedTask) task).getPriority() : 0;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                drain();
+            }
+        }
+    }
+
+    /**
+     * 移除还在排队的任务
+     *
+     * @param task 任务
+     * @return 是否移除成功
+     */
+    public boolean remove(Runnable task) {
+        return pending.remove(task);
+    }
+
+    /**
+     * 不再接收新任务，已经排队的任务仍会按并发上限交给底层执行器
+     */
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    /**
+     * 关闭后是否所有任务都已经结束
+     *
+     * @return 是否已经终止
+     */
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    /**
+     * 等待关闭后所有排队和执行中的任务结束，不包括底层执行器中其他来源的任务
+     *
+     * @param timeout 最长等待时间
+     * @param unit    时间单位
+     * @return 是否在等待时间内终止
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * 是否已经不再接收新任务
+     *
+     * @return 是否已经关闭
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * 移除所有还在排队的任务
+     *
+     * @return 被移除的任务
+     */
+    public List<Runnable> drainPending() {
+        List<Runnable> drained = new ArrayList<>();
+        Runnable task;
+        while ((task = pending.poll()) != null) {
+            drained.add(task);
+        }
+        tryTerminate();
+        return drained;
+    }
+
+    /**
+     * 获取交给底层执行器的包装任务对应的原任务
+     *
+     * @param task 任务
+     * @return 原任务，不是包装任务时返回自身
+     */
+    public static Runnable unwrap(Runnable task) {
+        return task instanceof ConcurrencyLimitedExecutor.LimitedTask ? ((ConcurrencyLimitedExecutor.LimitedTask) task).task : task;
+    }
+
+    /**
+     * 取消被底层执行器丢弃、不会再执行的任务，是包装任务时同时归还名额
+     * 归还的名额由正在提交的drain循环或下一个结束的任务继续使用，这里不再提交，避免在拒绝策略中递归提交
+     *
+     * @param task 被丢弃的任务
+     */
+    public static void cancel(Runnable task) {
+        if (task instanceof ConcurrencyLimitedExecutor.LimitedTask) {
+            ConcurrencyLimitedExecutor.LimitedTask limited = (ConcurrencyLimitedExecutor.LimitedTask) task;
+            ConcurrencyLimitedExecutor owner = limited.owner();
+            owner.active.decrementAndGet();
+            owner.tryTerminate();
+            task = limited.task;
+        }
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    /**
+     * 获取正在执行的任务数
+     *
+     * @return 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * 获取排队中的任务数
+     *
+     * @return 排队中的任务数
+     */
+    public int getQueueSize() {
+        return pending.size();
+    }
+
+    /**
+     * 获取最大并发数
+     *
+     * @return 最大并发数
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 获取底层执行器
+     *
+     * @return 底层执行器
+     */
+    public Executor getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,99 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 记录拒绝次数的拒绝策略，实际处理交给被包装的策略
+ * <p>
+ * 被丢弃的任务（discard、discard-oldest，以及线程池关闭后的任务）一律取消对应的Future，等待它的线程不会永远挂起；
+ * discard-oldest在优先级队列上丢弃最后才会执行的任务，而不是队首优先级最高的任务
+ *
+ * @author qcqcqc
+ */
+public class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+    private final RejectedExecutionHandler delegate;
+    private final LongAdder rejected;
+
+    /**
+     * 包装拒绝策略
+     *
+     * @param delegate 实际的拒绝策略
+     */
+    public CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+        this(delegate, new LongAdder());
+    }
+
+    private CountingRejectedExecutionHandler(RejectedExecutionHandler delegate, LongAdder rejected) {
+        this.delegate = delegate;
+        this.rejected = rejected;
+    }
+
+    /**
+     * 换一个实际的拒绝策略，和当前对象共用拒绝次数
+     *
+     * @param delegate 实际的拒绝策略
+     * @return 新的拒绝策略
+     */
+    public CountingRejectedExecutionHandler withDelegate(RejectedExecutionHandler delegate) {
+        return new CountingRejectedExecutionHandler(delegate, rejected);
+    }
+
+    /**
+     * 获取实际的拒绝策略
+     *
+     * @return 实际的拒绝策略
+     */
+    public RejectedExecutionHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        rejected.increment();
+        if (delegate instanceof ThreadPoolExecutor.AbortPolicy) {
+            if (executor.isShutdown()) {
+                // 包装任务的名额由提交方在收到异常时归还，这里只取消原任务
+                ConcurrencyLimitedExecutor.cancel(ConcurrencyLimitedExecutor.unwrap(r));
+            }
+            delegate.rejectedExecution(r, executor);
+            return;
+        }
+        if (executor.isShutdown() || delegate instanceof ThreadPoolExecutor.DiscardPolicy) {
+            // 线程池关闭后CallerRuns等策略也会直接丢弃任务
+            ConcurrencyLimitedExecutor.cancel(r);
+            return;
+        }
+        if (delegate instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+            discardOldest(r, executor);
+            return;
+        }
+        delegate.rejectedExecution(r, executor);
+    }
+
+    /**
+     * 丢弃一个排队中的任务并取消它，再重新提交被拒绝的任务
+     *
+     * @param r        被拒绝的任务
+     * @param executor 线程池
+     */
+    private static void discardOldest(Runnable r, ThreadPoolExecutor executor) {
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        Runnable victim = queue instanceof PriorityTaskQueue ? ((PriorityTaskQueue) queue).pollLast() : queue.poll();
+        if (victim != null) {
+            ConcurrencyLimitedExecutor.cancel(victim);
+        }
+        executor.execute(r);
+    }
+
+    /**
+     * 获取被拒绝的任务数
+     *
+     * @return 被拒绝的任务数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,16 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+/**
+ * 带优先级的任务
+ * 提交到优先级线程池时，优先级高的任务先执行，没有实现这个接口的任务优先级为0
+ *
+ * @author qcqcqc
+ */
+public interface PrioritizedTask {
+    /**
+     * 获取优先级
+     *
+     * @return 优先级，越大越先执行
+     */
+    int getPriority();
+}
@@ -0,0 +1,369 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按优先级出队的有界任务队列
+ * <p>
+ * 入队时计算排序键：入队时间 - 优先级 × 老化时间，键越小越先出队，相同时按入队顺序。
+ * 这相当于优先级每高1，就当作早入队了一个老化时间；反过来说低优先级的任务每等待一个老化时间，
+ * 就相当于优先级升高1，所以高优先级任务持续涌入时，低优先级任务最多多等(优先级差 × 老化时间)就会被执行，不会饿死。
+ * 排序键在入队时就确定，不需要随时间重新排序堆。老化时间为0时按严格优先级出队。
+ *
+ * @author qcqcqc
+ */
+public class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>, ResizableQueue {
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int capacity;
+    private final long agingNanos;
+    private long sequence;
+
+    /**
+     * 创建优先级任务队列
+     *
+     * @param capacity    队列容量
+     * @param agingMillis 老化时间，单位毫秒，为0时不老化
+     */
+    public PriorityTaskQueue(int capacity, long agingMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        if (agingMillis < 0) {
+            throw new IllegalArgumentException("agingMillis must not be negative: " + agingMillis);
+        }
+        this.capacity = capacity;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取老化时间
+     *
+     * @return 老化时间，单位毫秒
+     */
+    public long getAgingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(agingNanos);
+    }
+
+    private Entry entry(Runnable task) {
+        int priority = task instanceof PrioritizedTask ? ((PrioritizedTask) task).getPriority() : 0;
+        long key;
+        if (agingNanos == 0) {
+            key = -priority;
+        } else {
+            long boost = priority * agingNanos;
+            if (boost / agingNanos != priority) {
+                // 优先级极端时溢出，按最大提升处理
+                boost = priority > 0 ? Long.MAX_VALUE / 4 : Long.MIN_VALUE / 4;
+            }
+            key = System.nanoTime() - boost;
+        }
+        return new Entry(task, key, sequence++);
+    }
+
+    private void enqueue(Runnable task) {
+        heap.add(entry(task));
+        notEmpty.signal();
+    }
+
+    private Runnable dequeue() {
+        Entry entry = heap.poll();
+        if (entry == null) {
+            return null;
+        }
+        notFull.signal();
+        return entry.task;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        checkNotNull(task);
+        lock.lock();
+        try {
+            if (heap.size() >= capacity) {
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        checkNotNull(task);
+        lock.lockInterruptibly();
+        try {
+            while (heap.size() >= capacity) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        checkNotNull(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (heap.size() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (heap.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (heap.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取出最后才会执行的任务，即排序键最大的任务
+     * 需要遍历整个堆，只用于队列满时的discard-oldest拒绝策略
+     *
+     * @return 任务，队列为空时返回null
+     */
+    public Runnable pollLast() {
+        lock.lock();
+        try {
+            Entry last = null;
+            for (Entry entry : heap) {
+                if (last == null || entry.compareTo(last) > 0) {
+                    last = entry;
+                }
+            }
+            if (last == null) {
+                return null;
+            }
+            heap.remove(last);
+            notFull.signal();
+            return last.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            Entry entry = heap.peek();
+            return entry == null ? null : entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return Math.max(0, capacity - heap.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        lock.lock();
+        try {
+            if (heap.removeIf((entry) -> entry.task == task)) {
+                notFull.signal();
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        checkNotNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && !heap.isEmpty()) {
+                c.add(heap.poll().task);
+                n++;
+            }
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 返回当前队列快照的迭代器，不保证顺序
+     *
+     * @return 迭代器
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(heap.size());
+            for (Entry entry : heap) {
+                snapshot.add(entry.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                PriorityTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private static void checkNotNull(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final Runnable task;
+        private final long key;
+        private final long seq;
+
+        private Entry(Runnable task, long key, long seq) {
+            this.task = task;
+            this.key = key;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            // nanoTime可能为负，用差值比较
+            long diff = key - o.key;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(seq, o.seq);
+        }
+    }
+}
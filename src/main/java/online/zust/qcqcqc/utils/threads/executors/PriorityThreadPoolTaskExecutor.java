@@ -0,0 +1,37 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 按任务优先级调度的线程池
+ * 排队的任务按{@link PrioritizedTask#getPriority()}出队，并按老化时间逐步提升等待中任务的优先级，见{@link PriorityTaskQueue}
+ *
+ * @author qcqcqc
+ */
+public class PriorityThreadPoolTaskExecutor extends ResizableThreadPoolTaskExecutor {
+    private long agingMillis = 100;
+
+    /**
+     * 设置老化时间，需要在initialize之前设置
+     *
+     * @param agingMillis 低优先级任务每等待这么久，优先级相当于提升1，为0时按严格优先级调度
+     */
+    public void setAgingMillis(long agingMillis) {
+        this.agingMillis = agingMillis;
+    }
+
+    public long getAgingMillis() {
+        return agingMillis;
+    }
+
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        // SynchronousQueue不排队，优先级就没有意义了，容量为0时改为不限容量
+        return super.createQueue(queueCapacity > 0 ? queueCapacity : Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected BlockingQueue<Runnable> createResizableQueue(int queueCapacity) {
+        return new PriorityTaskQueue(queueCapacity, agingMillis);
+    }
+}
@@ -0,0 +1,22 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+/**
+ * 可以在运行时调整容量的任务队列
+ *
+ * @author qcqcqc
+ */
+public interface ResizableQueue {
+    /**
+     * 调整容量，缩小时已经在队列中的任务不会被丢弃，只是在降到新容量以下之前不再接收新任务
+     *
+     * @param capacity 新容量
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * 获取容量
+     *
+     * @return 容量
+     */
+    int getCapacity();
+}
@@ -0,0 +1,97 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 可以在运行时调整容量的先进先出任务队列
+ * 底层是无界的LinkedBlockingQueue，容量在入队时检查，不额外加锁：size()只读LinkedBlockingQueue内部的原子计数，
+ * 正在入队的线程数单独用一个原子计数记录，检查容量时一并算上，并发入队也不会超过容量。
+ * 代价是每次入队多两次原子操作，并且接近满时并发入队可能被提前拒绝
+ *
+ * @author qcqcqc
+ */
+public class ResizableTaskQueue extends LinkedBlockingQueue<Runnable> implements ResizableQueue {
+    private volatile int capacity;
+    /**
+     * 已经通过或正在进行容量检查、还没有完成入队的线程数
+     */
+    private final AtomicInteger inserting = new AtomicInteger();
+
+    /**
+     * 创建任务队列
+     *
+     * @param capacity 容量
+     */
+    public ResizableTaskQueue(int capacity) {
+        checkCapacity(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        checkCapacity(capacity);
+        this.capacity = capacity;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        // 先登记再检查：后登记的线程一定能看到先登记的线程，要么在inserting中，要么已经计入size()
+        int pending = inserting.incrementAndGet();
+        try {
+            if (size() + pending > capacity) {
+                return false;
+            }
+            return super.offer(task);
+        } finally {
+            inserting.decrementAndGet();
+        }
+    }
+
+    /**
+     * 队列满时等待，线程池只会调用offer(Runnable)，这里按1ms间隔重试即可
+     */
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        while (!offer(task)) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(task)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(1)));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Math.max(0, capacity - size());
+    }
+
+    private static void checkCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+    }
+}
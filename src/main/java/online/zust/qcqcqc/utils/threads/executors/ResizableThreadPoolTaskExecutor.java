@@ -0,0 +1,77 @@
+package online.zust.qcqcqc.utils.threads.executors;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * 初始化之后仍然可以调整队列容量和拒绝策略的线程池
+ * ThreadPoolTaskExecutor的核心线程数、最大线程数和空闲时间本来就会同步到运行中的线程池，
+ * 队列容量和拒绝策略只在初始化时生效，这里补上；调整时队列中的任务不受影响
+ *
+ * @author qcqcqc
+ */
+public class ResizableThreadPoolTaskExecutor extends ThreadPoolTaskExecutor {
+    private volatile BlockingQueue<Runnable> queue;
+    private volatile int queueCapacity = Integer.MAX_VALUE;
+
+    @Override
+    protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+        BlockingQueue<Runnable> created = queueCapacity > 0 ? createResizableQueue(queueCapacity) : super.createQueue(queueCapacity);
+        this.queue = created;
+        return created;
+    }
+
+    /**
+     * 创建可调整容量的队列
+     *
+     * @param queueCapacity 队列容量
+     * @return 队列
+     */
+    protected BlockingQueue<Runnable> createResizableQueue(int queueCapacity) {
+        return new ResizableTaskQueue(queueCapacity);
+    }
+
+    /**
+     * 设置队列容量，已经初始化时直接调整运行中的队列
+     *
+     * @param queueCapacity 队列容量
+     * @throws IllegalStateException 初始化时容量为0，使用的是不能调整容量的SynchronousQueue
+     */
+    @Override
+    public void setQueueCapacity(int queueCapacity) {
+        BlockingQueue<Runnable> current = queue;
+        if (current != null) {
+            if (!(current instanceof ResizableQueue)) {
+                throw new IllegalStateException("queue capacity was 0 at initialization and cannot be changed at runtime");
+            }
+            ((ResizableQueue) current).setCapacity(queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        super.setQueueCapacity(queueCapacity);
+    }
+
+    /**
+     * 获取队列容量
+     *
+     * @return 队列容量
+     */
+    public int getQueueCapacity() {
+        BlockingQueue<Runnable> current = queue;
+        return current instanceof ResizableQueue ? ((ResizableQueue) current).getCapacity() : queueCapacity;
+    }
+
+    /**
+     * 设置拒绝策略，已经初始化时直接替换运行中线程池的拒绝策略
+     *
+     * @param rejectedExecutionHandler 拒绝策略
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler rejectedExecutionHandler) {
+        super.setRejectedExecutionHandler(rejectedExecutionHandler);
+        if (queue != null) {
+            getThreadPoolExecutor().setRejectedExecutionHandler(rejectedExecutionHandler);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package online.zust.qcqcqc.utils.threads.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.PromiseExecutor;
+import online.zust.qcqcqc.utils.threads.PromiseMonitor;
+import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.executors.ConcurrencyLimitedExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Promise线程池和Promise生命周期的Micrometer指标
+ * 线程池指标在采集时读取，不影响任务执行，按executor标签区分默认线程池、绑定时已注册的命名线程池和分治任务线程池；
+ * 生命周期计时只在绑定到MeterRegistry之后才开启
+ *
+ * @author qcqcqc
+ */
+public class PromiseMetrics implements MeterBinder, PromiseMonitor {
+    /**
+     * 区分线程池的标签
+     */
+    private static final String EXECUTOR_TAG = "executor";
+    /**
+     * 分治任务线程池的标签值
+     */
+    private static final String FORK_JOIN = "fork-join";
+
+    private Timer queueWait;
+    private Timer callback;
+    private Timer[] execution;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindExecutor(registry, PromiseExecutor.DEFAULT_EXECUTOR_NAME, PromiseMetrics::defaultExecutor);
+        for (String name : PromiseExecutor.getExecutors().keySet()) {
+            if (PromiseExecutor.DEFAULT_EXECUTOR_NAME.equals(name)) {
+                continue;
+            }
+            // 每次采集时按名称查找，线程池被替换后读到的是新的线程池
+            bindExecutor(registry, name, () -> PromiseExecutor.getExecutors().get(name));
+        }
+        bindForkJoinPool(registry);
+        queueWait = Timer.builder("promise.queue.wait")
+                .description("Promise任务在线程池队列中的等待时间，重试时为各次之和，不含退避和限流等待")
+                .register(registry);
+        callback = Timer.builder("promise.callback")
+                .description("Promise完成后执行回调和唤醒等待线程的时间")
+                .register(registry);
+        PromiseStatus[] statuses = PromiseStatus.values();
+        Timer[] timers = new Timer[statuses.length];
+        for (PromiseStatus status : statuses) {
+            timers[status.ordinal()] = Timer.builder("promise.execution")
+                    .description("Promise任务的执行时间，重试时为各次之和")
+                    .tag("status", status.name())
+                    .register(registry);
+        }
+        execution = timers;
+        Promise.setMonitor(this);
+    }
+
+    @Override
+    public void onComplete(PromiseStatus status, long queueNanos, long executeNanos, long callbackNanos) {
+        if (queueNanos >= 0) {
+            queueWait.record(queueNanos, TimeUnit.NANOSECONDS);
+        }
+        execution[status.ordinal()].record(executeNanos, TimeUnit.NANOSECONDS);
+        callback.record(callbackNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 绑定一个线程池的指标
+     *
+     * @param registry 指标注册表
+     * @param name     线程池名称
+     * @param executor 采集时获取线程池
+     */
+    private void bindExecutor(MeterRegistry registry, String name, Supplier<Executor> executor) {
+        Gauge.builder("promise.executor.pool.size", this, (m) -> poolValue(executor.get(), ThreadPoolExecutor::getPoolSize))
+                .description("Promise线程池当前线程数")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+        Gauge.builder("promise.executor.active", this, (m) -> activeCount(executor.get()))
+                .description("Promise线程池正在执行任务的线程数")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+        Gauge.builder("promise.executor.queued", this, (m) -> queuedCount(executor.get()))
+                .description("Promise线程池排队中的任务数")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+        Gauge.builder("promise.executor.queue.remaining", this, (m) -> poolValue(executor.get(), (pool) -> pool.getQueue().remainingCapacity()))
+                .description("Promise线程池队列剩余容量")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+        FunctionCounter.builder("promise.executor.completed", this, (m) -> poolValue(executor.get(), ThreadPoolExecutor::getCompletedTaskCount))
+                .description("Promise线程池已完成的任务数")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+        FunctionCounter.builder("promise.executor.rejected", this, (m) -> {
+                    Executor current = executor.get();
+                    return current == null ? 0 : PromiseExecutor.getRejectedCount(current);
+                })
+                .description("队列已满而触发拒绝策略的任务数")
+                .tag(EXECUTOR_TAG, name)
+                .register(registry);
+    }
+
+    /**
+     * 绑定分治任务线程池的指标，线程池还没有创建时读到NaN，不会为了采集而创建
+     *
+     * @param registry 指标注册表
+     */
+    private void bindForkJoinPool(MeterRegistry registry) {
+        Gauge.builder("promise.executor.pool.size", this, (m) -> forkJoinValue(ForkJoinPool::getPoolSize))
+                .description("Promise线程池当前线程数")
+                .tag(EXECUTOR_TAG, FORK_JOIN)
+                .register(registry);
+        Gauge.builder("promise.executor.active", this, (m) -> forkJoinValue(ForkJoinPool::getActiveThreadCount))
+                .description("Promise线程池正在执行任务的线程数")
+                .tag(EXECUTOR_TAG, FORK_JOIN)
+                .register(registry);
+        Gauge.builder("promise.executor.queued", this, (m) -> forkJoinValue((pool) -> pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount()))
+                .description("Promise线程池排队中的任务数")
+                .tag(EXECUTOR_TAG, FORK_JOIN)
+                .register(registry);
+    }
+
+    private static double forkJoinValue(ToDoubleFunction<ForkJoinPool> getter) {
+        ForkJoinPool pool = PromiseExecutor.getForkJoinPoolIfPresent();
+        return pool == null ? Double.NaN : getter.applyAsDouble(pool);
+    }
+
+    private static double poolValue(Executor executor, ToDoubleFunction<ThreadPoolExecutor> getter) {
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool == null ? Double.NaN : getter.applyAsDouble(pool);
+    }
+
+    private static double activeCount(Executor executor) {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            return ((ConcurrencyLimitedExecutor) executor).getActiveCount();
+        }
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool == null ? Double.NaN : pool.getActiveCount();
+    }
+
+    private static double queuedCount(Executor executor) {
+        int queued = 0;
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            queued = ((ConcurrencyLimitedExecutor) executor).getQueueSize();
+        }
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool == null ? queued : queued + pool.getQueue().size();
+    }
+
+    /**
+     * 获取线程池底层的ThreadPoolExecutor，虚拟线程等其他执行器返回null
+     *
+     * @param executor 线程池
+     * @return 线程池
+     */
+    private static ThreadPoolExecutor threadPool(Executor executor) {
+        if (executor instanceof ConcurrencyLimitedExecutor) {
+            executor = ((ConcurrencyLimitedExecutor) executor).getDelegate();
+        }
+        try {
+            if (executor instanceof ThreadPoolTaskExecutor) {
+                return ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor();
+            }
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        if (executor instanceof ThreadPoolExecutor) {
+            return (ThreadPoolExecutor) executor;
+        }
+        return null;
+    }
+
+    private static Executor defaultExecutor() {
+        try {
+            return PromiseExecutor.getPromiseExecutor();
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package online.zust.qcqcqc.utils.threads.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮定时器
+ * <p>
+ * 单个工作线程按固定刻度推进时间轮，定时任务按到期刻度散列到桶中，插入和取消都是O(1)，可以容纳数百万个待执行任务；
+ * 设置了执行器时，到期的任务只把回调交给执行器执行，工作线程本身不执行用户代码；执行器需要自己处理交接失败，
+ * 抛出的异常只会被记录。没有待执行任务时工作线程挂起，不会空转。
+ *
+ * @author qcqcqc
+ */
+public class HashedWheelTimer {
+    private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+    /**
+     * 每个刻度最多从新任务队列转移到桶中的任务数，避免工作线程被大量新任务拖住
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final String threadName;
+    /**
+     * 新加入的任务，由工作线程在每个刻度转移到桶中
+     */
+    private final Queue<Timeout> timeouts = new ConcurrentLinkedQueue<>();
+    /**
+     * 已取消的任务，由工作线程在每个刻度从桶中移除
+     */
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    /**
+     * 尚未到期也未被移除的任务数
+     */
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    /**
+     * 0：未启动，1：运行中，2：已停止
+     */
+    private final AtomicInteger workerState = new AtomicInteger();
+    private volatile Thread workerThread;
+    private volatile boolean idle;
+    /**
+     * 时间轮启动时刻，所有截止时间都相对于它计算
+     */
+    private volatile long startTime;
+    /**
+     * 已推进的刻度数，只由工作线程访问
+     */
+    private long tick;
+
+    /**
+     * 创建时间轮
+     *
+     * @param threadName    工作线程名
+     * @param tickDuration  刻度时长
+     * @param unit          刻度时长单位
+     * @param ticksPerWheel 每圈刻度数，会向上取整为2的幂
+     * @param taskExecutor  执行到期任务的执行器，为null时在工作线程中执行
+     */
+    public HashedWheelTimer(String threadName, long tickDuration, TimeUnit unit, int ticksPerWheel, Executor taskExecutor) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30]: " + ticksPerWheel);
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.taskExecutor = taskExecutor;
+        this.threadName = threadName;
+    }
+
+    /**
+     * 延迟执行一次
+     *
+     * @param task  任务
+     * @param delay 延迟
+     * @param unit  时间单位
+     * @return 定时任务句柄
+     */
+    public TimerHandle newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        start();
+        long deadline = System.nanoTime() + Math.max(0L, unit.toNanos(delay)) - startTime;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingTimeouts.incrementAndGet();
+        timeouts.add(timeout);
+        if (idle) {
+            LockSupport.unpark(workerThread);
+        }
+        return timeout;
+    }
+
+    /**
+     * 固定频率周期执行，本次执行结束后才会安排下一次，执行时间超过周期时下一次会立即开始，不会并发执行
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟
+     * @param period       周期
+     * @param unit         时间单位
+     * @return 周期任务句柄
+     */
+    public TimerHandle scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return schedulePeriodic(task, initialDelay, period, unit, true);
+    }
+
+    /**
+     * 固定延迟周期执行，每次执行结束后再延迟指定时间执行下一次
+     *
+     * @param task         任务
+     * @param initialDelay 首次延迟
+     * @param delay        两次执行之间的延迟
+     * @param unit         时间单位
+     * @return 周期任务句柄
+     */
+    public TimerHandle scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return schedulePeriodic(task, initialDelay, delay, unit, false);
+    }
+
+    /**
+     * 获取待执行任务数
+     *
+     * @return 待执行任务数
+     */
+    public long pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        if (workerState.getAndSet(2) == 1) {
+            LockSupport.unpark(workerThread);
+        }
+    }
+
+    private TimerHandle schedulePeriodic(Runnable task, long initialDelay, long period, TimeUnit unit, boolean fixedRate) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be greater than 0: " + period);
+        }
+        PeriodicTask periodicTask = new PeriodicTask(task, unit.toNanos(period), fixedRate);
+        periodicTask.schedule(unit.toNanos(Math.max(0L, initialDelay)));
+        return periodicTask;
+    }
+
+    /**
+     * 懒启动工作线程
+     */
+    private void start() {
+        int current = workerState.get();
+        if (current == 0 && workerState.compareAndSet(0, 1)) {
+            // startTime必须在第一个任务计算截止时间之前确定
+            long now = System.nanoTime();
+            Thread thread = new Thread(this::run, threadName);
+            thread.setDaemon(true);
+            workerThread = thread;
+            startTime = now == 0 ? 1 : now;
+            thread.start();
+            return;
+        }
+        if (workerState.get() == 2) {
+            throw new IllegalStateException("timer " + threadName + " has been stopped");
+        }
+        // 其他线程正在启动时，等待startTime确定
+        while (startTime == 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 工作线程主循环
+     */
+    private void run() {
+        while (workerState.get() == 1) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+            int index = (int) (tick & mask);
+            processCancelledTimeouts();
+            transferTimeoutsToBuckets();
+            wheel[index].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * 等待下一个刻度，没有任何待执行任务时挂起直到有新任务加入
+     *
+     * @return 当前刻度的截止时间（相对startTime），被唤醒但未到刻度时返回-1
+     */
+    private long waitForNextTick() {
+        if (pendingTimeouts.get() == 0) {
+            idle = true;
+            if (pendingTimeouts.get() == 0 && workerState.get() == 1) {
+                LockSupport.park(this);
+            }
+            idle = false;
+            // 空闲期间所有桶都是空的，直接快进到当前刻度
+            long current = System.nanoTime() - startTime;
+            tick = Math.max(tick, current / tickDuration);
+            return -1;
+        }
+        long deadline = tickDuration * (tick + 1);
+        for (; ; ) {
+            long current = System.nanoTime() - startTime;
+            long sleepNanos = deadline - current;
+            if (sleepNanos <= 0) {
+                return current;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+            if (workerState.get() != 1) {
+                return -1;
+            }
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            timeout.remove();
+        }
+    }
+
+    private void transferTimeoutsToBuckets() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = timeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state() == Timeout.ST_CANCELLED) {
+                pendingTimeouts.decrementAndGet();
+                continue;
+            }
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的任务放到当前刻度，马上执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    /**
+     * 把到期的任务交给执行器
+     *
+     * @param task 任务
+     */
+    private void dispatch(Runnable task) {
+        try {
+            if (taskExecutor == null) {
+                task.run();
+            } else {
+                taskExecutor.execute(task);
+            }
+        } catch (Throwable t) {
+            log.error("timer task error: {}", t.getMessage());
+        }
+    }
+
+    /**
+     * 时间轮中的一个定时任务
+     */
+    private static final class Timeout implements TimerHandle {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        private int state() {
+            return state;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            // 由工作线程从桶中移除，取消本身不加锁
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        private void remove() {
+            Bucket b = bucket;
+            if (b != null) {
+                b.remove(this);
+                timer.pendingTimeouts.decrementAndGet();
+            }
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            timer.dispatch(task);
+        }
+    }
+
+    /**
+     * 时间轮的桶，双向链表，只由工作线程访问
+     */
+    private final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    next = remove(timeout);
+                    pendingTimeouts.decrementAndGet();
+                    if (timeout.deadline <= deadline) {
+                        timeout.expire();
+                    } else {
+                        log.error("timeout.deadline ({}) > deadline ({})", timeout.deadline, deadline);
+                    }
+                } else if (timeout.isCancelled()) {
+                    next = remove(timeout);
+                    pendingTimeouts.decrementAndGet();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                if (timeout == tail) {
+                    tail = null;
+                    head = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    /**
+     * 周期任务，每次执行结束后再安排下一次，因此同一个周期任务不会并发执行
+     */
+    private final class PeriodicTask implements TimerHandle, Runnable {
+        private final Runnable task;
+        private final long period;
+        private final boolean fixedRate;
+        private volatile boolean cancelled;
+        private volatile TimerHandle current;
+        private long nextRunTime;
+
+        private PeriodicTask(Runnable task, long period, boolean fixedRate) {
+            this.task = task;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        private void schedule(long delayNanos) {
+            nextRunTime = System.nanoTime() + delayNanos;
+            current = newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("periodic task error: {}", e.getMessage());
+            }
+            if (cancelled || workerState.get() != 1) {
+                return;
+            }
+            if (fixedRate) {
+                nextRunTime += period;
+                long delay = nextRunTime - System.nanoTime();
+                current = newTimeout(this, Math.max(0L, delay), TimeUnit.NANOSECONDS);
+            } else {
+                schedule(period);
+            }
+            // 取消与重新安排并发时，确保新安排的任务也被取消
+            if (cancelled) {
+                current.cancel();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            TimerHandle handle = current;
+            if (handle != null) {
+                handle.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+    }
+}
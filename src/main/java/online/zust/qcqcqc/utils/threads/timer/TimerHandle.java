@@ -0,0 +1,30 @@
+package online.zust.qcqcqc.utils.threads.timer;
+
+/**
+ * 定时任务句柄
+ *
+ * @author qcqcqc
+ */
+public interface TimerHandle {
+    /**
+     * 取消定时任务，周期任务取消后不会再执行
+     *
+     * @return 是否由本次调用取消，已到期或已取消时返回false
+     */
+    boolean cancel();
+
+    /**
+     * 是否已取消
+     *
+     * @return 是否已取消
+     */
+    boolean isCancelled();
+
+    /**
+     * 是否已到期（已交给执行器执行）
+     * 周期任务只有在取消后才算结束，因此始终返回false
+     *
+     * @return 是否已到期
+     */
+    boolean isExpired();
+}
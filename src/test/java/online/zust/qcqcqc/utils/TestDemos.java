@@ -1,23 +1,51 @@
 package online.zust.qcqcqc.utils;
 
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import online.zust.qcqcqc.utils.threads.CircuitBreaker;
 import online.zust.qcqcqc.utils.threads.Promise;
+import online.zust.qcqcqc.utils.threads.PromiseCache;
 import online.zust.qcqcqc.utils.threads.PromiseExecutor;
+import online.zust.qcqcqc.utils.threads.PromiseTrace;
+import online.zust.qcqcqc.utils.threads.PromiseTracer;
+import online.zust.qcqcqc.utils.threads.Promises;
+import online.zust.qcqcqc.utils.threads.RateLimiter;
+import online.zust.qcqcqc.utils.threads.RetryPolicy;
+import online.zust.qcqcqc.utils.threads.ShutdownReport;
 import online.zust.qcqcqc.utils.threads.Tasks;
+import online.zust.qcqcqc.utils.threads.enums.CircuitState;
 import online.zust.qcqcqc.utils.threads.enums.PromiseStatus;
+import online.zust.qcqcqc.utils.threads.exceptions.CircuitOpenException;
+import online.zust.qcqcqc.utils.threads.exceptions.PromiseTimeoutException;
+import online.zust.qcqcqc.utils.threads.executors.AdaptivePoolSizer;
+import online.zust.qcqcqc.utils.threads.executors.ConcurrencyLimitedExecutor;
+import online.zust.qcqcqc.utils.threads.executors.CountingRejectedExecutionHandler;
+import online.zust.qcqcqc.utils.threads.metrics.PromiseMetrics;
+import online.zust.qcqcqc.utils.threads.timer.TimerHandle;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.Serial;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
  * @author qcqcqc
@@ -220,6 +248,85 @@ public class TestDemos {
         timeout.await();
     }
 
+    @Test
+    public void testAwaitTimeout() {
+        Promise<Integer> slow = Promise.resolve((status) -> {
+            Thread.sleep(2000);
+            return 123;
+        });
+        try {
+            slow.await(Duration.ofMillis(200));
+        } catch (PromiseTimeoutException e) {
+            System.out.println("等待超时：" + e.getMessage());
+        }
+        Integer fallback = slow.completeOnTimeout(-1, Duration.ofMillis(200)).await();
+        System.out.println("超时后的默认结果为：" + fallback);
+        assertEquals(Integer.valueOf(-1), fallback);
+        Promise<Integer> timeout = slow.orTimeout(Duration.ofMillis(200))
+                .onException((e) -> {
+                    System.out.println("返回结果为" + e.getMessage() + "，进入异常回调");
+                    return 0;
+                });
+        timeout.await();
+        assertEquals(PromiseStatus.REJECTED, timeout.getStatus());
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        taskList.add(slow.reBuild());
+        taskList.add(() -> 1);
+        try {
+            taskList.awaitAll(Duration.ofMillis(200));
+        } catch (PromiseTimeoutException e) {
+            System.out.println("任务列表等待超时：" + e.getMessage());
+        }
+        System.out.println("任务结果：" + taskList.awaitAll(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void testInterval() throws Exception {
+        List<Long> times = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger onTimerThread = new AtomicInteger();
+        TimerHandle interval = Tasks.setInterval(() -> {
+            times.add(System.currentTimeMillis());
+            if (Thread.currentThread().getName().startsWith("promise-timer")) {
+                onTimerThread.incrementAndGet();
+            }
+            System.out.println("interval执行，线程：" + Thread.currentThread().getName());
+        }, 200);
+        Thread.sleep(1100);
+        interval.cancel();
+        int count = times.size();
+        Thread.sleep(500);
+        System.out.println("周期任务执行次数：" + count);
+        assertEquals(count, times.size());
+        // 周期任务在线程池中执行，不占用定时器的派发线程
+        assertEquals(0, onTimerThread.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 0; i < 10; i++) {
+            int finalI = i;
+            taskList.add(Promise.resolve((status) -> {
+                // 协作式取消：定期检查是否已被取消
+                for (int j = 0; j < 50 && !status.isCancelled(); j++) {
+                    Thread.sleep(100);
+                }
+                return finalI;
+            }).onFinally((res) -> System.out.println("任务" + finalI + "结束，结果为" + res)));
+        }
+        taskList.startAllAsync();
+        Thread.sleep(300);
+        long start = System.currentTimeMillis();
+        int cancelled = taskList.cancelAll();
+        List<Integer> results = taskList.awaitAll();
+        System.out.println("取消任务数：" + cancelled + "，耗时：" + (System.currentTimeMillis() - start) + "ms，结果：" + results);
+        assertEquals(10, cancelled);
+        Promise<Integer> notStarted = Promise.resolve(() -> 1);
+        notStarted.cancel(false);
+        assertEquals(PromiseStatus.CANCELED, notStarted.getStatus());
+        assertEquals(null, notStarted.await());
+    }
+
     @Test
     public void testNullTask() throws Exception {
         Promise<Object> resolve = Promise.resolve(() -> null);
@@ -254,6 +361,42 @@ public class TestDemos {
         System.out.println("任务结果：" + integers);
     }
 
+    @Test
+    public void testTasksFinishCallback() {
+        AtomicInteger finished = new AtomicInteger();
+        // 空列表立即回调
+        Tasks.TaskList<Integer> empty = Tasks.createTaskList();
+        empty.onTasksFinish(finished::incrementAndGet);
+        assertEquals(Integer.valueOf(1), Integer.valueOf(finished.get()));
+        // 全部完成之后再注册也会回调
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 0; i < 3; i++) {
+            int value = i;
+            taskList.add(() -> value);
+        }
+        taskList.awaitAll();
+        taskList.onTasksFinish(finished::incrementAndGet);
+        System.out.println("全部完成回调次数：" + finished.get());
+        assertEquals(Integer.valueOf(2), Integer.valueOf(finished.get()));
+    }
+
+    @Test
+    public void testStartedTaskCount() {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList(2);
+        for (int i = 0; i < 3; i++) {
+            int value = i;
+            taskList.add(() -> value);
+        }
+        taskList.startAllAsync();
+        taskList.awaitAll();
+        // 重复启动和启动之后添加的任务都不会重复计数
+        taskList.startAllAsync();
+        taskList.add(() -> 3);
+        taskList.awaitAll();
+        System.out.println("已启动任务数：" + taskList.getStartedTaskCount());
+        assertEquals(4L, taskList.getStartedTaskCount());
+    }
+
     @Test
     public void testStartWithMultiThreads1() {
         List<Integer> integers = new ArrayList<>();
@@ -330,6 +473,714 @@ public class TestDemos {
         System.out.println("任务结果：" + strings);
     }
 
+    @Test
+    public void testThen() {
+        Promise<Integer> first = Promise.resolve((status) -> {
+            System.out.println("start first.....");
+            Thread.sleep(500);
+            return 1;
+        });
+        Promise<Integer> second = Promise.resolve((status) -> {
+            System.out.println("start second.....");
+            Thread.sleep(500);
+            return 2;
+        });
+        Promise<String> chain = first.then((res) -> res + 10)
+                .thenCompose((res) -> Promise.resolve(() -> res * 2))
+                .thenCombine(second, Integer::sum)
+                .then((res) -> {
+                    if (res > 0) {
+                        throw new IllegalStateException("结果为" + res);
+                    }
+                    return String.valueOf(res);
+                })
+                .exceptionally((e) -> "异常：" + e.getMessage())
+                .onSucceed((res) -> System.out.println("返回结果为" + res + "，进入成功回调"));
+        String result = chain.await();
+        System.out.println("Promise结果为：" + result);
+        assertEquals("异常：结果为24", result);
+    }
+
+    @Test
+    public void testPromises() {
+        List<Promise<Integer>> pool = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int finalI = i;
+            pool.add(Promise.resolve((status) -> {
+                Thread.sleep(new Random().nextInt(500) + 100L * finalI);
+                return finalI;
+            }));
+        }
+        Promise<List<Integer>> all = Promises.all(pool)
+                .onSucceed((res) -> System.out.println("全部完成：" + res));
+        Promise<Integer> race = Promises.race(pool)
+                .onSucceed((res) -> System.out.println("最先完成：" + res));
+        Promise<Integer> any = Promises.any(Promise.resolve(() -> {
+            throw new RuntimeException("失败的任务");
+        }), Promise.resolve(() -> 1));
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), all.await());
+        System.out.println("race结果为：" + race.await());
+        assertEquals(Integer.valueOf(1), any.await());
+        List<Promise<?>> settled = Promises.allSettled(race, any).await();
+        System.out.println("allSettled结果为：" + settled.stream().map(Promise::getStatus).toList());
+    }
+
+    @Test
+    public void testConcurrencyLimit() throws InterruptedException {
+        ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(Executors.newCachedThreadPool(), 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(32);
+        for (int i = 0; i < 32; i++) {
+            executor.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                latch.countDown();
+            });
+        }
+        latch.await();
+        System.out.println("虚拟线程是否可用：" + ThreadsUtils.isVirtualThreadSupported() + "，最大并发：" + peak.get());
+        assertEquals(Integer.valueOf(4), Integer.valueOf(peak.get()));
+        executor.shutdown();
+        assertEquals(true, executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        // 并发上限超过底层线程池容量时，被拒绝的任务取消，不会抛给提交方
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+        ConcurrencyLimitedExecutor limited = new ConcurrencyLimitedExecutor(pool, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        Promise<Integer> first = Promise.resolve(() -> {
+            release.await();
+            return 1;
+        }).on(limited);
+        first.startAsync();
+        Promise<Integer> second = Promise.resolve(() -> 2).on(limited);
+        second.startAsync();
+        System.out.println("被底层线程池拒绝的任务状态：" + second.getStatus());
+        assertEquals(PromiseStatus.CANCELED, second.getStatus());
+        release.countDown();
+        assertEquals(Integer.valueOf(1), first.await());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testChunks() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            items.add(i);
+        }
+        long start = System.currentTimeMillis();
+        List<Integer> results = Tasks.startWithChunksSync(items, (item) -> item * 2);
+        System.out.println("分块执行" + items.size() + "个任务耗时：" + (System.currentTimeMillis() - start) + "ms");
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(Integer.valueOf(i * 2), results.get(i));
+        }
+        List<Integer> handled = Tasks.startWithChunksAsync(List.of(1, 2, 3), (item) -> {
+            if (item == 2) {
+                throw new RuntimeException("任务失败");
+            }
+            return item;
+        }, (e) -> -1).await();
+        assertEquals(List.of(1, -1, 3), handled);
+    }
+
+    @Test
+    public void testDivideAndConquer() {
+        int[] numbers = new int[1000000];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = i % 100;
+        }
+        Promise<Long> sum = Tasks.divideAndConquer(new int[]{0, numbers.length},
+                (range) -> range[1] - range[0] <= 10000,
+                (range) -> {
+                    long s = 0;
+                    for (int i = range[0]; i < range[1]; i++) {
+                        s += numbers[i];
+                    }
+                    return s;
+                },
+                (range) -> {
+                    int mid = (range[0] + range[1]) >>> 1;
+                    return List.of(new int[]{range[0], mid}, new int[]{mid, range[1]});
+                },
+                Long::sum);
+        System.out.println("分治求和结果为：" + sum.await());
+        assertEquals(Long.valueOf(49500000L), sum.await());
+    }
+
+    @Test
+    public void testAsCompleted() {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 5; i > 0; i--) {
+            int finalI = i;
+            taskList.add(() -> {
+                Thread.sleep(finalI * 100L);
+                return finalI;
+            });
+        }
+        List<Integer> order = new ArrayList<>();
+        taskList.forEachAsCompleted((res) -> {
+            System.out.println("完成：" + res);
+            order.add(res);
+        });
+        assertEquals(List.of(1, 2, 3, 4, 5), order);
+        System.out.println("再次按完成顺序求和：" + taskList.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void testMaxInFlight() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            items.add(i);
+        }
+        List<Integer> results = Tasks.startWithMultiThreadsSync(items, (item) -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            return item;
+        }, 3);
+        System.out.println("同时执行的任务数最多为：" + peak.get());
+        assertEquals(items, results);
+        assertEquals(Integer.valueOf(3), Integer.valueOf(peak.get()));
+    }
+
+    @Test
+    public void testThrottledProgress() {
+        Tasks.TaskList<Integer> taskList = Tasks.createTaskList();
+        for (int i = 0; i < 100000; i++) {
+            int finalI = i;
+            taskList.add(() -> finalI);
+        }
+        AtomicInteger reports = new AtomicInteger();
+        taskList.onShowProgress((done, total) -> {
+            reports.incrementAndGet();
+            System.out.println("已完成任务数：" + done + "，总任务数：" + total);
+        }, 20000, 0);
+        taskList.awaitAll();
+        assertEquals(Integer.valueOf(0), Integer.valueOf(taskList.getUnfinishedTaskCount()));
+        assertEquals(Integer.valueOf(5), Integer.valueOf(reports.get()));
+    }
+
+    @Test
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ThreadPoolExecutor io = new ThreadPoolExecutor(1, 1, 60, SECONDS, new LinkedBlockingQueue<>());
+        PromiseExecutor.registerExecutor("metrics-io", io);
+        new PromiseMetrics().bindTo(registry);
+        try {
+            Tasks.startWithMultiThreadsSync(List.of(1, 2, 3), (item) -> item);
+            Promise.resolve(() -> {
+                throw new RuntimeException("失败的任务");
+            }).startSync();
+            Promise.resolve(() -> 1).on("metrics-io").await();
+            System.out.println("活跃线程数：" + registry.get("promise.executor.active").tag("executor", "default").gauge().value());
+            // 命名线程池按executor标签单独统计
+            assertEquals(1.0, registry.get("promise.executor.pool.size").tag("executor", "metrics-io").gauge().value());
+            System.out.println("排队等待耗时：" + registry.get("promise.queue.wait").timer().totalTime(TimeUnit.MICROSECONDS) + "us");
+            assertEquals(4L, registry.get("promise.execution").tag("status", "FULFILLED").timer().count());
+            assertEquals(1L, registry.get("promise.execution").tag("status", "REJECTED").timer().count());
+        } finally {
+            Promise.setMonitor(null);
+            PromiseExecutor.unregisterExecutor("metrics-io");
+            io.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMonitorWithRetry() throws InterruptedException {
+        long[] nanos = new long[2];
+        CountDownLatch reported = new CountDownLatch(1);
+        Promise.setMonitor((status, queueNanos, executeNanos, callbackNanos) -> {
+            nanos[0] = queueNanos;
+            nanos[1] = executeNanos;
+            reported.countDown();
+        });
+        try {
+            AtomicInteger attempts = new AtomicInteger();
+            String result = Promise.resolve(() -> {
+                Thread.sleep(20);
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IllegalStateException("not ready");
+                }
+                return "ok";
+            }).retry(RetryPolicy.of(3).backoff(Duration.ofMillis(200), Duration.ofMillis(200)).jitter(0)).await();
+            reported.await();
+            long queueMillis = TimeUnit.NANOSECONDS.toMillis(nanos[0]);
+            long executeMillis = TimeUnit.NANOSECONDS.toMillis(nanos[1]);
+            System.out.println("三次执行的排队时间：" + queueMillis + "ms，执行时间：" + executeMillis + "ms");
+            assertEquals("ok", result);
+            // 执行时间是三次执行之和，排队时间不包括两次200ms的退避
+            assertEquals(true, executeMillis >= 60 && executeMillis < 200);
+            assertEquals(true, queueMillis < 200);
+        } finally {
+            Promise.setMonitor(null);
+        }
+    }
+
+    @Test
+    public void testTracer() {
+        PromiseTracer.enable(8, 1);
+        try {
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                items.add(i);
+            }
+            Tasks.startWithMultiThreadsSync(items, (item) -> item);
+            Promise.resolve(() -> 1).onSucceed((res) -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }).startSync();
+            List<PromiseTrace> traces = PromiseTracer.dump();
+            traces.forEach(System.out::println);
+            assertEquals(Integer.valueOf(8), Integer.valueOf(traces.size()));
+            PromiseTrace last = traces.get(traces.size() - 1);
+            assertEquals(true, last.getCallbackNanos() >= 50_000_000L);
+        } finally {
+            PromiseTracer.disable();
+        }
+    }
+
+    @Test
+    public void testAdaptivePoolSize() throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 60, SECONDS, new LinkedBlockingQueue<>());
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, 2, 32, 100);
+        sizer.start();
+        try {
+            // 阻塞型任务：线程越多吞吐量越高，应该扩容
+            for (int i = 0; i < 2000; i++) {
+                pool.execute(() -> {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Thread.sleep(1000);
+            System.out.println("负载下核心线程数：" + sizer.getCorePoolSize() + "，吞吐量：" + Math.round(sizer.getThroughput()) + "/s");
+            assertEquals(true, sizer.getCorePoolSize() > 2);
+            // 运行中收紧上限，下个周期核心线程数回到范围内
+            sizer.setBounds(2, 4);
+            Thread.sleep(300);
+            System.out.println("收紧上限后核心线程数：" + sizer.getCorePoolSize() + "，最大线程数：" + pool.getMaximumPoolSize());
+            assertEquals(true, sizer.getCorePoolSize() <= 4);
+            // 扩容时调大的最大线程数随缩容收回
+            assertEquals(true, pool.getMaximumPoolSize() <= 4);
+        } finally {
+            sizer.stop();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNamedExecutors() {
+        ThreadPoolExecutor io = new ThreadPoolExecutor(2, 2, 60, SECONDS, new LinkedBlockingQueue<>(),
+                (r) -> new Thread(r, "io-" + r.hashCode()));
+        ThreadPoolExecutor cpu = new ThreadPoolExecutor(2, 2, 60, SECONDS, new LinkedBlockingQueue<>(),
+                (r) -> new Thread(r, "cpu-" + r.hashCode()));
+        PromiseExecutor.registerExecutor("io", io);
+        PromiseExecutor.registerExecutor("cpu", cpu);
+        try {
+            // io线程池被慢任务占满，不影响cpu线程池中的任务
+            for (int i = 0; i < 4; i++) {
+                Promise.resolve(() -> {
+                    Thread.sleep(500);
+                    return null;
+                }).on("io").startAsync();
+            }
+            long start = System.currentTimeMillis();
+            String name = Promise.resolve(() -> Thread.currentThread().getName()).on("cpu").await();
+            long cost = System.currentTimeMillis() - start;
+            System.out.println("cpu任务执行线程：" + name + "，耗时：" + cost + "ms");
+            assertEquals(true, name.startsWith("cpu-"));
+            assertEquals(true, cost < 400);
+            List<String> names = Tasks.startWithMultiThreadsSync(List.of(1, 2, 3), (item) -> Thread.currentThread().getName(), "cpu");
+            assertEquals(true, names.stream().allMatch((n) -> n.startsWith("cpu-")));
+        } finally {
+            PromiseExecutor.unregisterExecutor("io");
+            PromiseExecutor.unregisterExecutor("cpu");
+            io.shutdownNow();
+            cpu.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPriority() throws InterruptedException {
+        Executor strict = ThreadsUtils.createPriorityExecutor(1, 1, 100, 60, 0, new ThreadPoolExecutor.CallerRunsPolicy(), "strict");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch gate = new CountDownLatch(1);
+        Promise.resolve(() -> {
+            gate.await();
+            return null;
+        }).on(strict).startAsync();
+        List<Promise<Boolean>> promises = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String name = "batch" + i;
+            promises.add(Promise.resolve(() -> order.add(name)).on(strict));
+        }
+        promises.add(Promise.resolve(() -> order.add("interactive")).on(strict).priority(10));
+        promises.forEach(Promise::startAsync);
+        gate.countDown();
+        Promises.all(promises).await();
+        System.out.println("严格优先级执行顺序：" + order);
+        assertEquals("interactive", order.get(0));
+        assertEquals("batch0", order.get(1));
+
+        // 老化：低优先级任务等待20ms后，相当于优先级提升2，排在后提交的优先级为1的任务前面
+        Executor aging = ThreadsUtils.createPriorityExecutor(1, 1, 100, 60, 10, new ThreadPoolExecutor.CallerRunsPolicy(), "aging");
+        List<String> agingOrder = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch agingGate = new CountDownLatch(1);
+        Promise.resolve(() -> {
+            agingGate.await();
+            return null;
+        }).on(aging).startAsync();
+        Promise<Boolean> low = Promise.resolve(() -> agingOrder.add("low")).on(aging);
+        low.startAsync();
+        Thread.sleep(50);
+        Promise<Boolean> high = Promise.resolve(() -> agingOrder.add("high")).on(aging).priority(1);
+        high.startAsync();
+        agingGate.countDown();
+        Promises.all(low, high).await();
+        System.out.println("老化后执行顺序：" + agingOrder);
+        assertEquals(List.of("low", "high"), agingOrder);
+        ((ThreadPoolTaskExecutor) strict).shutdown();
+        ((ThreadPoolTaskExecutor) aging).shutdown();
+    }
+
+    @Test
+    public void testReconfigure() throws InterruptedException {
+        Executor executor = ThreadsUtils.createExecutor(1, 1, 2, 60, new ThreadPoolExecutor.CallerRunsPolicy(), "tune");
+        PromiseExecutor.registerExecutor("tune", executor);
+        try {
+            CountDownLatch gate = new CountDownLatch(1);
+            AtomicInteger done = new AtomicInteger();
+            AtomicInteger callerRuns = new AtomicInteger();
+            Thread caller = Thread.currentThread();
+            Runnable task = () -> {
+                if (Thread.currentThread() == caller) {
+                    callerRuns.incrementAndGet();
+                } else {
+                    try {
+                        gate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                done.incrementAndGet();
+            };
+            // 1个执行中 + 2个排队，第4个由调用线程执行
+            for (int i = 0; i < 4; i++) {
+                executor.execute(task);
+            }
+            assertEquals(Integer.valueOf(1), Integer.valueOf(callerRuns.get()));
+            PromiseExecutor.NamedExecutorProperties properties = PromiseExecutor.getProperties("tune");
+            properties.setCorePoolSize(4);
+            properties.setMaxPoolSize(8);
+            properties.setQueueCapacity(20);
+            PromiseExecutor.reconfigure("tune", properties);
+            for (int i = 0; i < 10; i++) {
+                executor.execute(task);
+            }
+            PromiseExecutor.NamedExecutorProperties current = PromiseExecutor.getProperties("tune");
+            System.out.println("调整后核心线程数：" + current.getCorePoolSize() + "，最大线程数：" + current.getMaxPoolSize() + "，队列容量：" + current.getQueueCapacity());
+            assertEquals(Integer.valueOf(1), Integer.valueOf(callerRuns.get()));
+            assertEquals(Integer.valueOf(4), Integer.valueOf(current.getCorePoolSize()));
+            assertEquals(Integer.valueOf(20), Integer.valueOf(current.getQueueCapacity()));
+            gate.countDown();
+            ((ThreadPoolTaskExecutor) executor).shutdown();
+            ((ThreadPoolTaskExecutor) executor).getThreadPoolExecutor().awaitTermination(5, SECONDS);
+            // 调整前排队的任务一个都没有丢
+            assertEquals(Integer.valueOf(14), Integer.valueOf(done.get()));
+        } finally {
+            PromiseExecutor.unregisterExecutor("tune");
+        }
+    }
+
+    @Test
+    public void testDiscardPolicy() throws InterruptedException {
+        Executor executor = ThreadsUtils.createExecutor(1, 1, 1, 60, new CountingRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy()), "discard");
+        CountDownLatch gate = new CountDownLatch(1);
+        Promise.resolve(() -> {
+            gate.await();
+            return null;
+        }).on(executor).startAsync();
+        Promise<String> queued = Promise.resolve(() -> "queued").on(executor);
+        queued.startAsync();
+        Promise<String> dropped = Promise.resolve(() -> "dropped").on(executor);
+        dropped.startAsync();
+        // 被丢弃的任务会被取消，等待它的线程不会挂起
+        dropped.waitFinish();
+        System.out.println("discard丢弃的任务状态：" + dropped.getStatus());
+        assertEquals(PromiseStatus.CANCELED, dropped.getStatus());
+        gate.countDown();
+        assertEquals("queued", queued.await());
+
+        // 优先级队列上discard-oldest丢弃最后才会执行的任务
+        Executor priority = ThreadsUtils.createPriorityExecutor(1, 1, 2, 60, 0, new CountingRejectedExecutionHandler(new ThreadPoolExecutor.DiscardOldestPolicy()), "oldest");
+        CountDownLatch priorityGate = new CountDownLatch(1);
+        Promise.resolve(() -> {
+            priorityGate.await();
+            return null;
+        }).on(priority).startAsync();
+        Promise<String> high = Promise.resolve(() -> "high").on(priority).priority(5);
+        Promise<String> low = Promise.resolve(() -> "low").on(priority);
+        Promise<String> newer = Promise.resolve(() -> "newer").on(priority).priority(1);
+        high.startAsync();
+        low.startAsync();
+        newer.startAsync();
+        low.waitFinish();
+        System.out.println("discard-oldest丢弃的任务状态：" + low.getStatus());
+        assertEquals(PromiseStatus.CANCELED, low.getStatus());
+        priorityGate.countDown();
+        assertEquals("high", high.await());
+        assertEquals("newer", newer.await());
+        ((ThreadPoolTaskExecutor) executor).shutdown();
+        ((ThreadPoolTaskExecutor) priority).shutdown();
+    }
+
+    @Test
+    public void testGracefulShutdown() throws InterruptedException {
+        PromiseExecutor.registerExecutor("fast", ThreadsUtils.createExecutor(1, 1, 10, "fast"));
+        PromiseExecutor.registerExecutor("slow", ThreadsUtils.createExecutor(1, 1, 10, "slow"));
+        Promise<String> fast = Promise.resolve(() -> {
+            Thread.sleep(100);
+            return "done";
+        }).on("fast");
+        fast.startAsync();
+        Promise<String> slow = Promise.resolve(() -> {
+            Thread.sleep(5000);
+            return "done";
+        }).on("slow");
+        slow.startAsync();
+        List<Promise<String>> queued = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Promise<String> promise = Promise.resolve(() -> "queued").on("slow");
+            promise.startAsync();
+            queued.add(promise);
+        }
+        // 第一次执行失败后等待10s再重试，关闭时不在任何队列中
+        CountDownLatch attempted = new CountDownLatch(1);
+        Promise<String> retrying = Promise.resolve((Callable<String>) () -> {
+            attempted.countDown();
+            throw new IllegalStateException("not ready");
+        }).retry(RetryPolicy.of(3).backoff(Duration.ofSeconds(10), Duration.ofSeconds(10)).jitter(0));
+        retrying.startAsync();
+        attempted.await();
+        Thread.sleep(50);
+        ShutdownReport report = PromiseExecutor.shutdownGracefully(Duration.ofMillis(500));
+        System.out.println("关闭结果：" + report);
+        assertEquals(PromiseStatus.FULFILLED, fast.getStatus());
+        assertEquals(List.of("slow"), report.getUndrainedExecutors());
+        assertEquals(Integer.valueOf(1), Integer.valueOf(report.getInterruptedCount()));
+        assertEquals(Integer.valueOf(2), Integer.valueOf(report.getCancelledTasks().size()));
+        for (Promise<String> promise : queued) {
+            assertEquals(PromiseStatus.CANCELED, promise.getStatus());
+        }
+        assertEquals(Integer.valueOf(1), Integer.valueOf(report.getCancelledWaitingTasks().size()));
+        assertEquals(PromiseStatus.CANCELED, retrying.getStatus());
+        // 被中断的任务以失败结束，等待者不会挂起
+        slow.waitFinish();
+        assertEquals(PromiseStatus.REJECTED, slow.getStatus());
+        // 关闭之后使用默认线程池直接失败，不会被悄悄取消
+        boolean rejected = false;
+        try {
+            Promise.resolve(() -> "late").startAsync();
+        } catch (RejectedExecutionException e) {
+            rejected = true;
+        }
+        assertEquals(true, rejected);
+    }
+
+    @Test
+    public void testPromiseCache() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        PromiseCache<String, String> cache = new PromiseCache<String, String>((key) -> {
+            loads.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return key + "-" + loads.get();
+        }).expireAfterWrite(Duration.ofMillis(300));
+        // 并发获取同一个key只加载一次
+        List<Promise<String>> promises = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            promises.add(cache.get("a"));
+        }
+        for (Promise<String> promise : promises) {
+            assertEquals("a-1", promise.await());
+        }
+        assertEquals(Integer.valueOf(1), Integer.valueOf(loads.get()));
+        // 命中时直接返回已完成的Promise
+        Promise<String> hit = cache.get("a");
+        assertEquals(true, hit.isDone());
+        assertEquals("a-1", hit.getResult());
+        // 过期后重新加载
+        Thread.sleep(400);
+        assertEquals("a-2", cache.get("a").await());
+        System.out.println("命中：" + cache.getHitCount() + "，未命中：" + cache.getMissCount());
+
+        // 刷新期间先返回旧值
+        AtomicInteger version = new AtomicInteger();
+        PromiseCache<String, Integer> refreshing = new PromiseCache<String, Integer>((key) -> version.incrementAndGet())
+                .refreshAfterWrite(Duration.ofMillis(100));
+        assertEquals(Integer.valueOf(1), refreshing.get("v").await());
+        Thread.sleep(150);
+        assertEquals(Integer.valueOf(1), refreshing.get("v").getResult());
+        Thread.sleep(100);
+        assertEquals(Integer.valueOf(2), refreshing.get("v").getResult());
+
+        // 超过最大条目数时淘汰访问少的
+        PromiseCache<Integer, Integer> bounded = new PromiseCache<Integer, Integer>((key) -> key).maximumSize(16);
+        bounded.get(-1).await();
+        for (int i = 0; i < 200; i++) {
+            bounded.get(-1);
+            bounded.get(i).await();
+        }
+        System.out.println("条目数：" + bounded.size() + "，淘汰数：" + bounded.getEvictionCount());
+        assertEquals(true, bounded.size() <= 16);
+        assertEquals(Integer.valueOf(-1), bounded.getIfPresent(-1));
+    }
+
+    @Test
+    public void testRetry() {
+        // 前两次失败，第三次成功
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy policy = RetryPolicy.of(5).backoff(Duration.ofMillis(50), Duration.ofMillis(200)).jitter(0);
+        long start = System.currentTimeMillis();
+        String result = Promise.resolve(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("第" + attempts.get() + "次失败");
+            }
+            return "ok";
+        }).retry(policy).await();
+        long cost = System.currentTimeMillis() - start;
+        System.out.println("执行次数：" + attempts.get() + "，耗时：" + cost + "ms");
+        assertEquals("ok", result);
+        assertEquals(Integer.valueOf(3), Integer.valueOf(attempts.get()));
+        // 退避50ms + 100ms
+        assertEquals(true, cost >= 150);
+
+        // 次数用完后进入异常处理
+        AtomicInteger failures = new AtomicInteger();
+        Promise<String> exhausted = Promise.resolve((Callable<String>) () -> {
+            failures.incrementAndGet();
+            throw new IllegalStateException("总是失败");
+        }).retry(RetryPolicy.of(3).backoff(Duration.ofMillis(10), Duration.ofMillis(10)))
+                .onException((e) -> "fallback");
+        assertEquals("fallback", exhausted.startSync());
+        assertEquals(Integer.valueOf(3), Integer.valueOf(failures.get()));
+        assertEquals(PromiseStatus.REJECTED, exhausted.getStatus());
+
+        // 不可重试的异常直接失败
+        AtomicInteger once = new AtomicInteger();
+        Promise<String> notRetried = Promise.resolve((Callable<String>) () -> {
+            once.incrementAndGet();
+            throw new IllegalArgumentException("参数错误");
+        }).retry(RetryPolicy.of(3).retryOn(IllegalStateException.class));
+        notRetried.await();
+        assertEquals(Integer.valueOf(1), Integer.valueOf(once.get()));
+
+        // 退避期间取消
+        Promise<String> cancelled = Promise.resolve((Callable<String>) () -> {
+            throw new IllegalStateException("失败");
+        }).retry(RetryPolicy.of(3).backoff(Duration.ofSeconds(10), Duration.ofSeconds(10)));
+        cancelled.startAsync();
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assertEquals(PromiseStatus.RUNNING, cancelled.getStatus());
+        assertEquals(true, cancelled.cancel(false));
+        assertEquals(PromiseStatus.CANCELED, cancelled.getStatus());
+    }
+
+    @Test
+    public void testRateLimiter() {
+        RateLimiter tryLimiter = new RateLimiter(10, 3);
+        int granted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (tryLimiter.tryAcquire()) {
+                granted++;
+            }
+        }
+        // 初始时桶是满的，只能突发3个
+        assertEquals(Integer.valueOf(3), Integer.valueOf(granted));
+
+        // 每秒20个，突发5个：25个任务大约1秒完成
+        RateLimiter limiter = new RateLimiter(20, 5);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            items.add(i);
+        }
+        long start = System.nanoTime();
+        List<Long> startedAt = Tasks.startWithMultiThreadsSync(items,
+                (item) -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), limiter);
+        long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("各任务开始时间：" + startedAt + "，总耗时：" + cost + "ms");
+        assertEquals(true, cost >= 900);
+        assertEquals(true, startedAt.subList(0, 5).stream().allMatch((t) -> t < 100));
+        // 等待许可的任务不占用线程池线程
+        RateLimiter slow = new RateLimiter(2, 1);
+        assertEquals("first", Promise.resolve(() -> "first").limit(slow).startSync());
+        Promise<String> waiting = Promise.resolve(() -> "second").limit(slow);
+        waiting.startAsync();
+        ThreadPoolExecutor pool = ((ThreadPoolTaskExecutor) PromiseExecutor.getPromiseExecutor()).getThreadPoolExecutor();
+        assertEquals(PromiseStatus.RUNNING, waiting.getStatus());
+        assertEquals(Integer.valueOf(0), Integer.valueOf(pool.getActiveCount()));
+        assertEquals("second", waiting.await());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("downstream")
+                .minimumCalls(4)
+                .failureRateThreshold(0.5)
+                .openDuration(Duration.ofMillis(200))
+                .halfOpenCalls(2);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            breaker.resolve(() -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("下游不可用");
+            }).await();
+        }
+        System.out.println("失败率：" + breaker.getFailureRate() + "，状态：" + breaker.getState());
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        // 打开后直接拒绝，任务不会执行
+        Promise<String> rejected = breaker.resolve(() -> {
+            calls.incrementAndGet();
+            return "ok";
+        }).onException((e) -> "fallback");
+        assertEquals("fallback", rejected.await());
+        assertEquals(PromiseStatus.REJECTED, rejected.getStatus());
+        assertEquals(true, rejected.getCause() instanceof CircuitOpenException);
+        assertEquals(Integer.valueOf(4), Integer.valueOf(calls.get()));
+        assertEquals(1L, breaker.getNotPermittedCount());
+        // 到期后半开，探测成功后关闭
+        Thread.sleep(250);
+        for (int i = 0; i < 2; i++) {
+            assertEquals("ok", breaker.resolve(() -> "ok").await());
+        }
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+
     @Test
     public void testCompletableFuture() {
         CompletableFuture<Integer> future = CompletableFuture.supplyAsync(() -> {